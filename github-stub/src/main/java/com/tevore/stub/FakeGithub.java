@@ -0,0 +1,186 @@
+package com.tevore.stub;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates users and repos from the username and the seed alone, so every run and every
+ * instance of the stub answers the same username with the same body ( and the same ETag )
+ * --
+ * Logins are canonicalised to lower case like Github does for lookups, so Octocat and octocat
+ * are the same user. touch() bumps a user's updated_at, changing their bodies and ETags the way
+ * an edit on Github would.
+ */
+final class FakeGithub {
+
+    private static final List<String> LOCATIONS =
+            List.of("Berlin", "Lisbon", "Miami", "Toronto", "Nairobi", "Osaka", "Lima", "Krakow");
+
+    private static final List<String> LANGUAGES =
+            List.of("Java", "Kotlin", "Go", "Rust", "TypeScript", "Python", "C", "Shell");
+
+    private static final Instant EPOCH = Instant.parse("2008-04-10T00:00:00Z");
+
+    private final long seed;
+    private final int maxRepos;
+    private final double missingRatio;
+    private final Map<String, Integer> edits = new ConcurrentHashMap<>();
+
+    FakeGithub(long seed, int maxRepos, double missingRatio) {
+        this.seed = seed;
+        this.maxRepos = maxRepos;
+        this.missingRatio = missingRatio;
+    }
+
+    boolean isMissing(String login) {
+        String canonical = canonical(login);
+        return canonical.startsWith("missing-") || random(canonical).nextDouble() < missingRatio;
+    }
+
+    /**
+     * Log-uniform between 0 and maxRepos: most users have a handful, a few have hundreds
+     */
+    int repoCount(String login) {
+        SplittableRandom random = random(canonical(login));
+        random.nextDouble(); // missing
+        return (int) Math.floor(Math.exp(random.nextDouble() * Math.log(maxRepos + 1.0))) - 1;
+    }
+
+    void touch(String login) {
+        edits.merge(canonical(login), 1, Integer::sum);
+    }
+
+    void reset() {
+        edits.clear();
+    }
+
+    byte[] user(String login, String baseUrl) {
+        String canonical = canonical(login);
+        SplittableRandom random = random(canonical);
+        random.nextDouble(); // missing
+        int repos = repoCount(canonical);
+        random.nextDouble(); // repo count
+        long id = 1_000 + random.nextLong(100_000_000L);
+        Instant createdAt = EPOCH.plus(random.nextLong(5_000), ChronoUnit.DAYS).plusSeconds(random.nextLong(86_400));
+        String location = LOCATIONS.get(random.nextInt(LOCATIONS.size()));
+        int followers = (int) Math.floor(Math.exp(random.nextDouble() * Math.log(100_000)));
+
+        StringBuilder json = new StringBuilder(1_024)
+                .append("{\"login\":").append(quote(canonical))
+                .append(",\"id\":").append(id)
+                .append(",\"node_id\":\"MDQ6VXNlcj").append(id).append('"')
+                .append(",\"avatar_url\":\"https://avatars.githubusercontent.com/u/").append(id).append("?v=4\"")
+                .append(",\"gravatar_id\":\"\"")
+                .append(",\"url\":").append(quote(baseUrl + "/users/" + canonical))
+                .append(",\"html_url\":").append(quote("https://github.com/" + canonical))
+                .append(",\"repos_url\":").append(quote(baseUrl + "/users/" + canonical + "/repos"))
+                .append(",\"type\":\"User\",\"user_view_type\":\"public\",\"site_admin\":false")
+                .append(",\"name\":").append(quote(displayName(canonical)))
+                .append(",\"company\":null,\"blog\":\"\"")
+                .append(",\"location\":").append(quote(location))
+                .append(",\"email\":").append(quote(canonical + "@example.com"))
+                .append(",\"hireable\":null,\"bio\":null,\"twitter_username\":null")
+                .append(",\"public_repos\":").append(repos)
+                .append(",\"public_gists\":").append(repos / 4)
+                .append(",\"followers\":").append(followers)
+                .append(",\"following\":").append(followers % 97)
+                .append(",\"created_at\":\"").append(createdAt).append('"')
+                .append(",\"updated_at\":\"").append(updatedAt(canonical, createdAt)).append("\"}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Repos fromIndex ( inclusive ) to toIndex ( exclusive ) of the user, as a JSON array
+     */
+    byte[] repos(String login, String baseUrl, int fromIndex, int toIndex) {
+        String canonical = canonical(login);
+        StringBuilder json = new StringBuilder(Math.max(2, toIndex - fromIndex) * 1_400).append('[');
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (i > fromIndex) json.append(',');
+            appendRepo(json, canonical, baseUrl, i);
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void appendRepo(StringBuilder json, String login, String baseUrl, int index) {
+        // Repo i of a user always gets the same stream, whichever page it is on
+        SplittableRandom random = new SplittableRandom(random(login).nextLong() + index * 0xBF58476D1CE4E5B9L);
+
+        String name = "repo-" + index;
+        String api = baseUrl + "/repos/" + login + "/" + name;
+        long id = 10_000_000 + random.nextLong(900_000_000L);
+        Instant createdAt = EPOCH.plus(random.nextLong(5_000), ChronoUnit.DAYS);
+        int stars = (int) Math.floor(Math.exp(random.nextDouble() * Math.log(50_000)));
+
+        json.append("{\"id\":").append(id)
+                .append(",\"node_id\":\"R_kgDO").append(id).append('"')
+                .append(",\"name\":").append(quote(name))
+                .append(",\"full_name\":").append(quote(login + "/" + name))
+                .append(",\"private\":false")
+                .append(",\"owner\":{\"login\":").append(quote(login))
+                .append(",\"url\":").append(quote(baseUrl + "/users/" + login))
+                .append(",\"type\":\"User\",\"site_admin\":false}")
+                .append(",\"html_url\":").append(quote("https://github.com/" + login + "/" + name))
+                .append(",\"description\":").append(quote("Generated repository " + index + " of " + login))
+                .append(",\"fork\":").append(random.nextInt(5) == 0)
+                .append(",\"url\":").append(quote(api))
+                .append(",\"forks_url\":").append(quote(api + "/forks"))
+                .append(",\"issues_url\":").append(quote(api + "/issues{/number}"))
+                .append(",\"pulls_url\":").append(quote(api + "/pulls{/number}"))
+                .append(",\"commits_url\":").append(quote(api + "/commits{/sha}"))
+                .append(",\"contents_url\":").append(quote(api + "/contents/{+path}"))
+                .append(",\"created_at\":\"").append(createdAt).append('"')
+                .append(",\"updated_at\":\"").append(updatedAt(login, createdAt)).append('"')
+                .append(",\"pushed_at\":\"").append(updatedAt(login, createdAt)).append('"')
+                .append(",\"clone_url\":").append(quote("https://github.com/" + login + "/" + name + ".git"))
+                .append(",\"homepage\":null")
+                .append(",\"size\":").append(random.nextInt(100_000))
+                .append(",\"stargazers_count\":").append(stars)
+                .append(",\"watchers_count\":").append(stars)
+                .append(",\"language\":").append(quote(LANGUAGES.get(random.nextInt(LANGUAGES.size()))))
+                .append(",\"has_issues\":true,\"has_wiki\":true,\"has_pages\":false")
+                .append(",\"forks_count\":").append(stars / 10)
+                .append(",\"archived\":false,\"disabled\":false")
+                .append(",\"open_issues_count\":").append(random.nextInt(50))
+                .append(",\"license\":{\"key\":\"mit\",\"name\":\"MIT License\",\"spdx_id\":\"MIT\"}")
+                .append(",\"topics\":[\"generated\"],\"visibility\":\"public\",\"default_branch\":\"main\"}");
+    }
+
+    private Instant updatedAt(String login, Instant createdAt) {
+        return createdAt.plus(30L * (1 + edits.getOrDefault(login, 0)), ChronoUnit.DAYS);
+    }
+
+    private SplittableRandom random(String canonical) {
+        return new SplittableRandom(seed ^ (canonical.hashCode() * 0x9E3779B97F4A7C15L));
+    }
+
+    private static String canonical(String login) {
+        return login.toLowerCase(Locale.ROOT);
+    }
+
+    private static String displayName(String login) {
+        return Character.toUpperCase(login.charAt(0)) + login.substring(1).replace('-', ' ');
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                default -> {
+                    if (c < 0x20) quoted.append(String.format("\\u%04x", (int) c));
+                    else quoted.append(c);
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,67 @@
+package com.tevore.stub;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
+
+/**
+ * Faults that can be switched on and off while the stub is running, from code or
+ * through the /_stub/* endpoints
+ * --
+ *  rateLimitFor     every request gets a 429 with Retry-After until the storm is over,
+ *                   like Github's secondary rate limits
+ *  failNext         the next n requests get a 502
+ *  failRatio        this share of requests gets a 502 until cleared
+ *  slowDown         extra latency on top of StubOptions.latency()
+ */
+public final class FaultInjector {
+
+    private volatile long rateLimitedUntilMillis;
+
+    private final AtomicInteger serverErrorsLeft = new AtomicInteger();
+
+    private volatile double serverErrorRatio;
+
+    private volatile Latency extraLatency = Latency.none();
+
+    public void rateLimitFor(Duration storm) {
+        rateLimitedUntilMillis = System.currentTimeMillis() + storm.toMillis();
+    }
+
+    public void failNext(int requests) {
+        serverErrorsLeft.set(Math.max(0, requests));
+    }
+
+    public void failRatio(double ratio) {
+        serverErrorRatio = Math.clamp(ratio, 0.0, 1.0);
+    }
+
+    public void slowDown(Latency latency) {
+        extraLatency = latency;
+    }
+
+    public void clear() {
+        rateLimitedUntilMillis = 0;
+        serverErrorsLeft.set(0);
+        serverErrorRatio = 0;
+        extraLatency = Latency.none();
+    }
+
+    /**
+     * @return seconds left in a 429 storm ( at least 1 ), or -1 when there is none
+     */
+    long retryAfterSeconds(long nowMillis) {
+        long left = rateLimitedUntilMillis - nowMillis;
+        return left > 0 ? Math.max(1, (left + 999) / 1000) : -1;
+    }
+
+    boolean serverError(RandomGenerator random) {
+        if (serverErrorsLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) return true;
+        double ratio = serverErrorRatio;
+        return ratio > 0 && random.nextDouble() < ratio;
+    }
+
+    Duration extraLatency(RandomGenerator random) {
+        return extraLatency.next(random);
+    }
+}
@@ -0,0 +1,375 @@
+package com.tevore.stub;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A stand-in for the two Github endpoints the app calls, /users/{username} and
+ * /users/{username}/repos, for load tests and benchmarks that can't spend a real rate limit.
+ * Point github.users.url and github.repos.url at usersUrl() / reposUrl().
+ * --
+ * Behaves like Github where the app cares:
+ *  users and repos are generated deterministically from the username ( see FakeGithub )
+ *  repos are paged with per_page ( default 30, max 100 ) and page, with a Link header
+ *  carrying prev / next / last / first
+ *  every body has a weak ETag, a matching If-None-Match gets a 304 that does not count
+ *  against the rate limit
+ *  X-RateLimit-Limit / Remaining / Used / Reset / Resource on every answer, and a 429
+ *  once the window's budget is spent
+ *  gzip when the client sends Accept-Encoding: gzip
+ * --
+ * Latency comes from StubOptions, faults ( 429 storms, 5xx bursts, extra latency ) from
+ * faults() or the admin endpoints, which are not rate limited, delayed or counted:
+ *  POST /_stub/rate-limit-storm?for=10s
+ *  POST /_stub/server-errors?count=50        or ?ratio=0.2
+ *  POST /_stub/latency?spec=lognormal:40ms,250ms
+ *  POST /_stub/touch?login=someone          changes someone's bodies and ETags
+ *  POST /_stub/reset                        faults, stats, rate limit window and touches
+ *  GET  /_stub/stats
+ * --
+ * Requests are handled on virtual threads, so injected latency never queues other requests.
+ */
+public final class GithubStubServer implements AutoCloseable {
+
+    private static final Pattern USER_PATH = Pattern.compile("^/users/([^/]+)(/repos)?/?$");
+
+    private static final int DEFAULT_PER_PAGE = 30;
+    private static final int MAX_PER_PAGE = 100;
+
+    private static final byte[] NOT_FOUND = ("{\"message\":\"Not Found\","
+            + "\"documentation_url\":\"https://docs.github.com/rest\",\"status\":\"404\"}").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RATE_LIMITED = ("{\"message\":\"API rate limit exceeded\","
+            + "\"documentation_url\":\"https://docs.github.com/rest/overview/rate-limits-for-the-rest-api\"}")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SECONDARY_RATE_LIMITED = ("{\"message\":\"You have exceeded a secondary rate limit. "
+            + "Please wait a few minutes before you try again.\"}").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SERVER_ERROR = "{\"message\":\"Server Error\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final StubOptions options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final FakeGithub github;
+    private final RateLimitWindow window;
+    private final FaultInjector faults = new FaultInjector();
+    private final StubStats stats = new StubStats();
+
+    private GithubStubServer(StubOptions options) throws IOException {
+        this.options = options;
+        this.github = new FakeGithub(options.seed(), options.maxRepos(), options.missingRatio());
+        this.window = new RateLimitWindow(options.rateLimit(), options.rateLimitWindow());
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", options.port()), 1_024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    public static GithubStubServer start(StubOptions options) throws IOException {
+        GithubStubServer stub = new GithubStubServer(options);
+        stub.server.start();
+        return stub;
+    }
+
+    public static void main(String[] args) throws IOException {
+        GithubStubServer stub = start(StubOptions.fromArgs(args));
+        Runtime.getRuntime().addShutdownHook(new Thread(stub::close));
+        System.out.println("GitHub stub listening on " + stub.baseUrl());
+        System.out.println("  --github.users.url=" + stub.usersUrl());
+        System.out.println("  --github.repos.url=" + stub.reposUrl());
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String usersUrl() {
+        return baseUrl() + "/users/{username}";
+    }
+
+    public String reposUrl() {
+        return baseUrl() + "/users/{username}/repos";
+    }
+
+    public FaultInjector faults() {
+        return faults;
+    }
+
+    public StubStats stats() {
+        return stats;
+    }
+
+    /**
+     * How many repos the stub will list for this username, to check results against
+     */
+    public int repoCount(String login) {
+        return github.repoCount(login);
+    }
+
+    public void reset() {
+        faults.clear();
+        stats.reset();
+        window.reset();
+        github.reset();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith("/_stub/")) {
+                admin(exchange, path);
+                return;
+            }
+
+            Matcher matcher = USER_PATH.matcher(path);
+            if (!matcher.matches() || !"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 404, NOT_FOUND);
+                return;
+            }
+            String login = URLDecoder.decode(matcher.group(1), StandardCharsets.UTF_8);
+            boolean repos = matcher.group(2) != null;
+            (repos ? stats.repoPages : stats.users).increment();
+
+            RandomGenerator random = ThreadLocalRandom.current();
+            sleep(options.latency().next(random).plus(faults.extraLatency(random)));
+
+            long now = System.currentTimeMillis();
+            long retryAfter = faults.retryAfterSeconds(now);
+            if (retryAfter >= 0) {
+                stats.rateLimited.increment();
+                exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfter));
+                window.writeHeaders(exchange.getResponseHeaders(), now);
+                send(exchange, 429, SECONDARY_RATE_LIMITED);
+                return;
+            }
+            if (faults.serverError(random)) {
+                stats.serverErrors.increment();
+                send(exchange, 502, SERVER_ERROR);
+                return;
+            }
+
+            byte[] body;
+            if (github.isMissing(login)) {
+                body = null;
+            } else if (repos) {
+                body = reposPage(exchange, login);
+            } else {
+                body = github.user(login, baseUrl());
+            }
+
+            String etag = body == null ? null : etag(body);
+            if (etag != null && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                // Conditional requests answered with a 304 are free on Github
+                stats.notModified.increment();
+                exchange.getResponseHeaders().set("ETag", etag);
+                window.writeHeaders(exchange.getResponseHeaders(), now);
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            if (!window.take(now)) {
+                stats.rateLimited.increment();
+                window.writeHeaders(exchange.getResponseHeaders(), now);
+                send(exchange, 429, RATE_LIMITED);
+                return;
+            }
+            window.writeHeaders(exchange.getResponseHeaders(), now);
+
+            if (body == null) {
+                stats.notFound.increment();
+                send(exchange, 404, NOT_FOUND);
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", etag);
+            send(exchange, 200, body);
+        }
+    }
+
+    /**
+     * The page asked for, setting the Link header on the exchange the way Github does:
+     * only when there is more than one page, and without rel="last" on the last page
+     */
+    private byte[] reposPage(HttpExchange exchange, String login) {
+        Map<String, String> query = query(exchange);
+        int perPage = Math.clamp(intParam(query, "per_page", DEFAULT_PER_PAGE), 1, MAX_PER_PAGE);
+        int page = Math.max(1, intParam(query, "page", 1));
+
+        int count = github.repoCount(login);
+        int lastPage = Math.max(1, (count + perPage - 1) / perPage);
+        if (lastPage > 1) {
+            String pageUrl = baseUrl() + exchange.getRequestURI().getPath() + "?per_page=" + perPage + "&page=";
+            StringBuilder link = new StringBuilder();
+            if (page > 1) link.append('<').append(pageUrl).append(Math.min(page, lastPage + 1) - 1).append(">; rel=\"prev\", ");
+            if (page < lastPage) {
+                link.append('<').append(pageUrl).append(page + 1).append(">; rel=\"next\", ");
+                link.append('<').append(pageUrl).append(lastPage).append(">; rel=\"last\", ");
+            }
+            if (page > 1) link.append('<').append(pageUrl).append(1).append(">; rel=\"first\", ");
+            exchange.getResponseHeaders().set("Link", link.substring(0, link.length() - 2));
+        }
+
+        int from = Math.min(count, (page - 1) * perPage);
+        int to = Math.min(count, from + perPage);
+        return github.repos(login, baseUrl(), from, to);
+    }
+
+    private void admin(HttpExchange exchange, String path) throws IOException {
+        Map<String, String> query = query(exchange);
+        switch (path) {
+            case "/_stub/rate-limit-storm" ->
+                    faults.rateLimitFor(StubOptions.parseDuration(query.getOrDefault("for", "10s")));
+            case "/_stub/server-errors" -> {
+                if (query.containsKey("ratio")) faults.failRatio(Double.parseDouble(query.get("ratio")));
+                else faults.failNext(intParam(query, "count", 1));
+            }
+            case "/_stub/latency" -> faults.slowDown(Latency.parse(query.getOrDefault("spec", "none")));
+            case "/_stub/touch" -> github.touch(query.getOrDefault("login", ""));
+            case "/_stub/reset" -> reset();
+            case "/_stub/stats" -> {
+                send(exchange, 200, stats.snapshot().toJson().getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            default -> {
+                send(exchange, 404, NOT_FOUND);
+                return;
+            }
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip") && body.length > 512) {
+            body = gzip(body);
+            headers.set("Content-Encoding", "gzip");
+            headers.set("Vary", "Accept-Encoding");
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "W/\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> query, String name, int fallback) {
+        try {
+            return query.containsKey(name) ? Integer.parseInt(query.get(name)) : fallback;
+        } catch (NumberFormatException ex) {
+            return fallback;
+        }
+    }
+
+    private static void sleep(Duration latency) {
+        if (latency.isZero() || latency.isNegative()) return;
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Github's primary rate limit: a fixed budget per window, starting with the first call
+     */
+    private static final class RateLimitWindow {
+
+        private final int limit;
+        private final long windowMillis;
+        private int remaining;
+        private long resetAtMillis;
+
+        RateLimitWindow(int limit, Duration window) {
+            this.limit = limit;
+            this.windowMillis = window.toMillis();
+        }
+
+        synchronized boolean take(long now) {
+            if (limit <= 0) return true;
+            roll(now);
+            if (remaining == 0) return false;
+            remaining--;
+            return true;
+        }
+
+        synchronized void writeHeaders(Headers headers, long now) {
+            if (limit <= 0) return;
+            roll(now);
+            headers.set("X-RateLimit-Limit", Integer.toString(limit));
+            headers.set("X-RateLimit-Remaining", Integer.toString(remaining));
+            headers.set("X-RateLimit-Used", Integer.toString(limit - remaining));
+            headers.set("X-RateLimit-Reset", Long.toString((resetAtMillis + 999) / 1000));
+            headers.set("X-RateLimit-Resource", "core");
+        }
+
+        synchronized void reset() {
+            resetAtMillis = 0;
+        }
+
+        private void roll(long now) {
+            if (now >= resetAtMillis) {
+                remaining = limit;
+                resetAtMillis = now + windowMillis;
+            }
+        }
+    }
+}
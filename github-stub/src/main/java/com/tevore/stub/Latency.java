@@ -0,0 +1,63 @@
+package com.tevore.stub;
+
+import java.time.Duration;
+import java.util.random.RandomGenerator;
+
+/**
+ * How long the stub waits before answering a request
+ * --
+ * Specs accepted by parse(), as used on the command line and by /_stub/latency:
+ *  none
+ *  fixed:50ms
+ *  uniform:20ms-80ms
+ *  lognormal:40ms,250ms    ( median, p99 ) - the long tail real upstreams have
+ */
+@FunctionalInterface
+public interface Latency {
+
+    // z-score of the 99th percentile of a standard normal distribution
+    double Z_99 = 2.3263;
+
+    Duration next(RandomGenerator random);
+
+    static Latency none() {
+        return random -> Duration.ZERO;
+    }
+
+    static Latency fixed(Duration latency) {
+        return random -> latency;
+    }
+
+    static Latency uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        if (maxNanos <= minNanos) return fixed(min);
+        return random -> Duration.ofNanos(random.nextLong(minNanos, maxNanos + 1));
+    }
+
+    static Latency logNormal(Duration median, Duration p99) {
+        double mu = Math.log(Math.max(1, median.toNanos()));
+        double sigma = Math.max(0, Math.log(Math.max(1, p99.toNanos())) - mu) / Z_99;
+        return random -> Duration.ofNanos((long) Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    static Latency parse(String spec) {
+        String trimmed = spec.trim();
+        int colon = trimmed.indexOf(':');
+        String kind = colon < 0 ? trimmed : trimmed.substring(0, colon);
+        String args = colon < 0 ? "" : trimmed.substring(colon + 1);
+        return switch (kind) {
+            case "none" -> none();
+            case "fixed" -> fixed(StubOptions.parseDuration(args));
+            case "uniform" -> {
+                String[] range = args.split("-", 2);
+                yield uniform(StubOptions.parseDuration(range[0]), StubOptions.parseDuration(range[1]));
+            }
+            case "lognormal" -> {
+                String[] params = args.split(",", 2);
+                yield logNormal(StubOptions.parseDuration(params[0]), StubOptions.parseDuration(params[1]));
+            }
+            default -> throw new IllegalArgumentException("Unknown latency spec: " + spec);
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package com.tevore.stub;
+
+import java.time.Duration;
+
+/**
+ * Fixed settings of a GithubStubServer, faults that change at runtime live in FaultInjector
+ * --
+ *  port             0 picks a free port
+ *  seed             same seed, same users and repos
+ *  maxRepos         repo counts are spread log-uniformly between 0 and this
+ *  missingRatio     share of usernames answered with a 404 ( on top of every missing-* username )
+ *  rateLimit        calls per rateLimitWindow before a 429, 0 for no limit and no X-RateLimit-* headers
+ *  latency          applied to every request before it is answered
+ */
+public record StubOptions(int port,
+                          long seed,
+                          int maxRepos,
+                          double missingRatio,
+                          int rateLimit,
+                          Duration rateLimitWindow,
+                          Latency latency) {
+
+    public static StubOptions defaults() {
+        return new StubOptions(0, 42L, 500, 0.05, 5000, Duration.ofHours(1), Latency.none());
+    }
+
+    public StubOptions withPort(int port) {
+        return new StubOptions(port, seed, maxRepos, missingRatio, rateLimit, rateLimitWindow, latency);
+    }
+
+    public StubOptions withSeed(long seed) {
+        return new StubOptions(port, seed, maxRepos, missingRatio, rateLimit, rateLimitWindow, latency);
+    }
+
+    public StubOptions withMaxRepos(int maxRepos) {
+        return new StubOptions(port, seed, maxRepos, missingRatio, rateLimit, rateLimitWindow, latency);
+    }
+
+    public StubOptions withMissingRatio(double missingRatio) {
+        return new StubOptions(port, seed, maxRepos, missingRatio, rateLimit, rateLimitWindow, latency);
+    }
+
+    public StubOptions withRateLimit(int rateLimit, Duration rateLimitWindow) {
+        return new StubOptions(port, seed, maxRepos, missingRatio, rateLimit, rateLimitWindow, latency);
+    }
+
+    public StubOptions withLatency(Latency latency) {
+        return new StubOptions(port, seed, maxRepos, missingRatio, rateLimit, rateLimitWindow, latency);
+    }
+
+    /**
+     * --port=8089 --seed=42 --max-repos=500 --missing-ratio=0.05
+     * --rate-limit=5000 --rate-limit-window=1h --latency=lognormal:40ms,250ms
+     */
+    public static StubOptions fromArgs(String[] args) {
+        StubOptions options = defaults();
+        Duration window = options.rateLimitWindow();
+        int rateLimit = options.rateLimit();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "port" -> options = options.withPort(Integer.parseInt(value));
+                case "seed" -> options = options.withSeed(Long.parseLong(value));
+                case "max-repos" -> options = options.withMaxRepos(Integer.parseInt(value));
+                case "missing-ratio" -> options = options.withMissingRatio(Double.parseDouble(value));
+                case "rate-limit" -> rateLimit = Integer.parseInt(value);
+                case "rate-limit-window" -> window = parseDuration(value);
+                case "latency" -> options = options.withLatency(Latency.parse(value));
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return options.withRateLimit(rateLimit, window);
+    }
+
+    /**
+     * 250ms, 2s, 5m, 1h or an ISO-8601 duration
+     */
+    public static Duration parseDuration(String value) {
+        String v = value.trim();
+        if (v.endsWith("ms")) return Duration.ofMillis(Long.parseLong(v.substring(0, v.length() - 2)));
+        if (v.endsWith("s")) return Duration.ofSeconds(Long.parseLong(v.substring(0, v.length() - 1)));
+        if (v.endsWith("m")) return Duration.ofMinutes(Long.parseLong(v.substring(0, v.length() - 1)));
+        if (v.endsWith("h")) return Duration.ofHours(Long.parseLong(v.substring(0, v.length() - 1)));
+        return Duration.parse(v);
+    }
+}
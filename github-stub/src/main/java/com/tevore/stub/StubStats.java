@@ -0,0 +1,58 @@
+package com.tevore.stub;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the stub has answered so far, so load tests can work out upstream calls per request.
+ * The admin endpoints are not counted.
+ */
+public final class StubStats {
+
+    final LongAdder users = new LongAdder();
+    final LongAdder repoPages = new LongAdder();
+    final LongAdder notModified = new LongAdder();
+    final LongAdder notFound = new LongAdder();
+    final LongAdder rateLimited = new LongAdder();
+    final LongAdder serverErrors = new LongAdder();
+
+    public Snapshot snapshot() {
+        return new Snapshot(users.sum(), repoPages.sum(), notModified.sum(),
+                notFound.sum(), rateLimited.sum(), serverErrors.sum());
+    }
+
+    public void reset() {
+        users.reset();
+        repoPages.reset();
+        notModified.reset();
+        notFound.reset();
+        rateLimited.reset();
+        serverErrors.reset();
+    }
+
+    /**
+     * users and repoPages count every call that reached those endpoints, whatever the answer
+     */
+    public record Snapshot(long users,
+                           long repoPages,
+                           long notModified,
+                           long notFound,
+                           long rateLimited,
+                           long serverErrors) {
+
+        public long total() {
+            return users + repoPages;
+        }
+
+        public Snapshot minus(Snapshot before) {
+            return new Snapshot(users - before.users, repoPages - before.repoPages,
+                    notModified - before.notModified, notFound - before.notFound,
+                    rateLimited - before.rateLimited, serverErrors - before.serverErrors);
+        }
+
+        String toJson() {
+            return "{\"users\":" + users + ",\"repo_pages\":" + repoPages + ",\"not_modified\":" + notModified
+                    + ",\"not_found\":" + notFound + ",\"rate_limited\":" + rateLimited
+                    + ",\"server_errors\":" + serverErrors + ",\"total\":" + total() + "}";
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.tevore.stub;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GithubStubServerTest {
+
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    private GithubStubServer stub;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = GithubStubServer.start(StubOptions.defaults()
+                .withMissingRatio(0)
+                .withMaxRepos(250)
+                .withRateLimit(5, Duration.ofHours(1)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void shouldAnswerTheSameUserTheSameWayIgnoringCase() throws Exception {
+        HttpResponse<String> first = get("/users/Some-User", null);
+        HttpResponse<String> second = get("/users/some-user", null);
+
+        assertEquals(200, first.statusCode());
+        assertEquals(first.body(), second.body());
+        assertEquals(first.headers().firstValue("ETag"), second.headers().firstValue("ETag"));
+        assertTrue(first.body().contains("\"login\":\"some-user\""));
+        assertEquals("5", first.headers().firstValue("X-RateLimit-Limit").orElseThrow());
+        assertEquals("3", second.headers().firstValue("X-RateLimit-Remaining").orElseThrow());
+    }
+
+    @Test
+    void shouldAnswerMatchingIfNoneMatchWithFree304() throws Exception {
+        String etag = get("/users/some-user", null).headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> revalidated = get("/users/some-user", etag);
+
+        assertEquals(304, revalidated.statusCode());
+        assertEquals("4", revalidated.headers().firstValue("X-RateLimit-Remaining").orElseThrow());
+        assertEquals(1, stub.stats().snapshot().notModified());
+    }
+
+    @Test
+    void shouldChangeETagWhenUserIsTouched() throws Exception {
+        String etag = get("/users/some-user", null).headers().firstValue("ETag").orElseThrow();
+
+        post("/_stub/touch?login=Some-User");
+
+        assertEquals(200, get("/users/some-user", etag).statusCode());
+    }
+
+    @Test
+    void shouldPageReposWithLinkHeader() throws Exception {
+        String login = userWithRepos(101);
+        int count = stub.repoCount(login);
+        int lastPage = (count + 99) / 100;
+
+        HttpResponse<String> first = get("/users/" + login + "/repos?per_page=100", null);
+        HttpResponse<String> last = get("/users/" + login + "/repos?per_page=100&page=" + lastPage, null);
+
+        String link = first.headers().firstValue("Link").orElseThrow();
+        assertTrue(link.contains("page=2>; rel=\"next\""), link);
+        assertTrue(link.contains("page=" + lastPage + ">; rel=\"last\""), link);
+        assertFalse(last.headers().firstValue("Link").orElseThrow().contains("rel=\"last\""));
+        assertEquals(100, first.body().split("\"full_name\"").length - 1);
+        assertEquals(count - (lastPage - 1) * 100, last.body().split("\"full_name\"").length - 1);
+    }
+
+    @Test
+    void shouldAnswerMissingUsernamesWith404() throws Exception {
+        assertEquals(404, get("/users/missing-someone", null).statusCode());
+        assertEquals(404, get("/users/missing-someone/repos", null).statusCode());
+        assertEquals(2, stub.stats().snapshot().notFound());
+    }
+
+    @Test
+    void shouldRateLimitOnceTheWindowIsSpent() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, get("/users/user-" + i, null).statusCode());
+        }
+
+        HttpResponse<String> limited = get("/users/one-too-many", null);
+
+        assertEquals(429, limited.statusCode());
+        assertEquals("0", limited.headers().firstValue("X-RateLimit-Remaining").orElseThrow());
+    }
+
+    @Test
+    void shouldInjectRateLimitStormsAndServerErrors() throws Exception {
+        post("/_stub/rate-limit-storm?for=5s");
+        HttpResponse<String> storm = get("/users/some-user", null);
+        assertEquals(429, storm.statusCode());
+        assertTrue(Long.parseLong(storm.headers().firstValue("Retry-After").orElseThrow()) > 0);
+
+        stub.faults().clear();
+        stub.faults().failNext(2);
+        assertEquals(502, get("/users/some-user", null).statusCode());
+        assertEquals(502, get("/users/some-user", null).statusCode());
+        assertEquals(200, get("/users/some-user", null).statusCode());
+
+        StubStats.Snapshot stats = stub.stats().snapshot();
+        assertEquals(1, stats.rateLimited());
+        assertEquals(2, stats.serverErrors());
+        assertEquals(4, stats.users());
+    }
+
+    @Test
+    void shouldApplyInjectedLatency() throws Exception {
+        stub.faults().slowDown(Latency.fixed(Duration.ofMillis(200)));
+
+        long start = System.nanoTime();
+        get("/users/some-user", null);
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 200);
+    }
+
+    private String userWithRepos(int atLeast) {
+        for (int i = 0; ; i++) {
+            if (stub.repoCount("user-" + i) >= atLeast) return "user-" + i;
+        }
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(stub.baseUrl() + path));
+        if (ifNoneMatch != null) request.header("If-None-Match", ifNoneMatch);
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void post(String path) throws Exception {
+        http.send(HttpRequest.newBuilder(URI.create(stub.baseUrl() + path))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.discarding());
+    }
+}
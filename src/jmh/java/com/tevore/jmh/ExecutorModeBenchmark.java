@@ -0,0 +1,127 @@
+package com.tevore.jmh;
+
+import com.tevore.configuration.AsyncConfig;
+import com.tevore.configuration.BoundedVirtualThreadExecutor;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The asyncExecutor pool against the virtual thread executor with a simulated slow upstream
+ * ( every task blocks for UPSTREAM_LATENCY like a Github call would ).
+ *  closedLoop  - CALLERS threads each waiting on its call before making the next, like
+ *                Tomcat threads blocked on join(); the score is the latency of one call
+ *  burst       - BURST calls submitted at once, like a wave of cache misses; the score is
+ *                the time until all of them are done, calls past the virtual executor's cap
+ *                are rejected and counted as rejected
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class ExecutorModeBenchmark {
+
+    private static final Duration UPSTREAM_LATENCY = Duration.ofMillis(50);
+
+    private static final int CALLERS = 200;
+    private static final int BURST = 2_000;
+
+    private static final Runnable SLOW_UPSTREAM = () -> {
+        try {
+            Thread.sleep(UPSTREAM_LATENCY);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    };
+
+    @Param({"pool", "virtual"})
+    String executorMode;
+
+    private Executor executor;
+
+    @Setup
+    public void setUp() {
+        executor = executorMode.equals("virtual")
+                ? new BoundedVirtualThreadExecutor("benchmark-", 500)
+                : new AsyncConfig().asyncExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    @Threads(CALLERS)
+    public void closedLoop(Calls calls) {
+        call(calls).join();
+    }
+
+    @Benchmark
+    public void burst(Calls calls) {
+        CompletableFuture<?>[] running = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            running[i] = call(calls);
+        }
+        CompletableFuture.allOf(running).join();
+    }
+
+    private CompletableFuture<Void> call(Calls calls) {
+        try {
+            return CompletableFuture.runAsync(SLOW_UPSTREAM, executor)
+                    .thenRun(calls.completed::incrementAndGet);
+        } catch (RejectedExecutionException ex) {
+            calls.rejected.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Reported next to the score: how many calls completed and how many were rejected
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Calls {
+
+        // Completed on the executor's threads, hence atomic
+        private final AtomicLong completed = new AtomicLong();
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            completed.set(0);
+            rejected.set(0);
+        }
+
+        public long completed() {
+            return completed.get();
+        }
+
+        public long rejected() {
+            return rejected.get();
+        }
+    }
+}
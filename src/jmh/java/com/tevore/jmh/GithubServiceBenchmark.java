@@ -0,0 +1,110 @@
+package com.tevore.jmh;
+
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import com.tevore.domain.GithubUserWithReposResponse;
+import com.tevore.service.GithubCacheInspector;
+import com.tevore.service.GithubGraphqlClient;
+import com.tevore.service.GithubService;
+import com.tevore.service.NegativeCache;
+import com.tevore.service.RevalidationStore;
+import com.tevore.service.SerializedResponseCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cache-hit path through GithubService.retrieveGithubUserAndRepoInfo with the
+ * caches filled up front and no upstream clients at all ( a hit never reaches them ).
+ *  cacheHit          - the same cached user and repos every time, so the assembled response is reused
+ *  cacheHitRebuilt   - the cached user alternates between two equal copies, forcing the response
+ *                      to be built again each call ( RFC_1123 formatting, repos copy )
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GithubServiceBenchmark {
+
+    private static final String USERNAME = "some-user";
+
+    @Param({"10", "100", "1000"})
+    int repoCount;
+
+    private GithubService githubService;
+
+    private Cache users;
+
+    private GithubUser user;
+
+    private GithubUser userCopy;
+
+    private boolean flip;
+
+    @Setup
+    public void setUp() {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("githubUsers", "githubUserRepos");
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+
+        githubService = new GithubService(
+                null,
+                new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(64), 0.25, 0.8),
+                new GithubCacheInspector(cacheManager),
+                beans.getBeanProvider(GithubGraphqlClient.class),
+                new NegativeCache(Duration.ofMinutes(1), 10_000, beans.getBeanProvider(MeterRegistry.class)),
+                new SerializedResponseCache(Duration.ofMinutes(5), Duration.ofMinutes(10), DataSize.ofMegabytes(64), 0.1, new JsonMapper()),
+                null
+        );
+
+        user = user();
+        userCopy = user();
+        List<GithubRepo> repos = new ArrayList<>(repoCount);
+        for (int i = 0; i < repoCount; i++) {
+            repos.add(new GithubRepo("repo-" + i, "https://api.github.com/repos/" + USERNAME + "/repo-" + i));
+        }
+
+        users = cacheManager.getCache("githubUsers");
+        users.put(USERNAME, user);
+        cacheManager.getCache("githubUserRepos").put(USERNAME, repos);
+    }
+
+    @Benchmark
+    public GithubUserWithReposResponse cacheHit() {
+        return githubService.retrieveGithubUserAndRepoInfo(USERNAME);
+    }
+
+    @Benchmark
+    public GithubUserWithReposResponse cacheHitRebuilt() {
+        flip = !flip;
+        users.put(USERNAME, flip ? userCopy : user);
+        return githubService.retrieveGithubUserAndRepoInfo(USERNAME);
+    }
+
+    private static GithubUser user() {
+        return new GithubUser(
+                USERNAME,
+                "https://avatars.githubusercontent.com/u/583231?v=4",
+                "https://api.github.com/users/" + USERNAME,
+                "Some User",
+                "Miami",
+                "someuser@example.com",
+                Instant.parse("2011-01-25T18:44:36Z")
+        );
+    }
+}
@@ -0,0 +1,126 @@
+package com.tevore.jmh;
+
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import com.tevore.domain.GithubUserWithReposResponse;
+import com.tevore.service.GithubRepoPageConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson work on the request path:
+ *  readUser            - a Github user payload into GithubUser
+ *  readRepoPage*       - a page of full Github repo objects, bound by databind vs read by GithubRepoPageConverter
+ *  writeResponse       - GithubUserWithReposResponse to JSON, what a response cache miss costs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonBenchmark {
+
+    private static final TypeReference<List<GithubRepo>> REPO_LIST = new TypeReference<>() {};
+
+    @Param({"1", "30", "100"})
+    int repoCount;
+
+    private final JsonMapper jsonMapper = new JsonMapper();
+
+    private byte[] userJson;
+
+    private byte[] repoPageJson;
+
+    private GithubUserWithReposResponse response;
+
+    @Setup
+    public void setUp() {
+        userJson = """
+                {"login":"some-user","id":583231,"node_id":"MDQ6VXNlcjU4MzIzMQ==",
+                 "avatar_url":"https://avatars.githubusercontent.com/u/583231?v=4","gravatar_id":"",
+                 "url":"https://api.github.com/users/some-user","html_url":"https://github.com/some-user",
+                 "repos_url":"https://api.github.com/users/some-user/repos","type":"User","site_admin":false,
+                 "name":"Some User","company":"@github","blog":"https://example.com","location":"Miami",
+                 "email":"someuser@example.com","hireable":null,"bio":null,"twitter_username":null,
+                 "public_repos":8,"public_gists":8,"followers":9999,"following":9,
+                 "created_at":"2011-01-25T18:44:36Z","updated_at":"2024-11-02T08:15:00Z"}
+                """.getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder page = new StringBuilder("[");
+        List<GithubRepo> repos = new ArrayList<>(repoCount);
+        for (int i = 0; i < repoCount; i++) {
+            if (i > 0) page.append(',');
+            page.append(repoJson(i));
+            repos.add(new GithubRepo("repo-" + i, "https://api.github.com/repos/some-user/repo-" + i));
+        }
+        repoPageJson = page.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+        response = new GithubUserWithReposResponse(
+                "some-user",
+                "https://avatars.githubusercontent.com/u/583231?v=4",
+                "https://api.github.com/users/some-user",
+                "Some User",
+                "Miami",
+                "someuser@example.com",
+                "Tue, 25 Jan 2011 18:44:36 GMT",
+                List.copyOf(repos)
+        );
+    }
+
+    @Benchmark
+    public GithubUser readUser() {
+        return jsonMapper.readValue(userJson, GithubUser.class);
+    }
+
+    @Benchmark
+    public List<GithubRepo> readRepoPageDatabind() {
+        return jsonMapper.readValue(repoPageJson, REPO_LIST);
+    }
+
+    @Benchmark
+    public List<GithubRepo> readRepoPageStreaming() {
+        try (JsonParser parser = jsonMapper.createParser(new ByteArrayInputStream(repoPageJson))) {
+            return GithubRepoPageConverter.readRepos(parser);
+        }
+    }
+
+    @Benchmark
+    public byte[] writeResponse() {
+        return jsonMapper.writeValueAsBytes(response);
+    }
+
+    // A trimmed but representative repo object: nested owner and license, plenty of unused fields
+    private static String repoJson(int i) {
+        String repo = "repo-" + i;
+        String api = "https://api.github.com/repos/some-user/" + repo;
+        return "{\"id\":" + (100_000 + i) + ",\"node_id\":\"R_kgDOH" + i + "\",\"name\":\"" + repo + "\","
+                + "\"full_name\":\"some-user/" + repo + "\",\"private\":false,"
+                + "\"owner\":{\"login\":\"some-user\",\"id\":583231,\"avatar_url\":\"https://avatars.githubusercontent.com/u/583231?v=4\","
+                + "\"url\":\"https://api.github.com/users/some-user\",\"html_url\":\"https://github.com/some-user\","
+                + "\"repos_url\":\"https://api.github.com/users/some-user/repos\",\"type\":\"User\",\"site_admin\":false},"
+                + "\"html_url\":\"https://github.com/some-user/" + repo + "\",\"description\":\"Repository number " + i + "\","
+                + "\"fork\":false,\"url\":\"" + api + "\",\"forks_url\":\"" + api + "/forks\","
+                + "\"issues_url\":\"" + api + "/issues{/number}\",\"pulls_url\":\"" + api + "/pulls{/number}\","
+                + "\"commits_url\":\"" + api + "/commits{/sha}\",\"contents_url\":\"" + api + "/contents/{+path}\","
+                + "\"created_at\":\"2014-03-04T12:24:54Z\",\"updated_at\":\"2024-11-02T08:15:00Z\","
+                + "\"pushed_at\":\"2024-10-30T21:03:11Z\",\"clone_url\":\"https://github.com/some-user/" + repo + ".git\","
+                + "\"homepage\":null,\"size\":" + (1_000 + i) + ",\"stargazers_count\":" + i + ",\"language\":\"Java\","
+                + "\"has_issues\":true,\"has_wiki\":true,\"archived\":false,\"open_issues_count\":0,"
+                + "\"license\":{\"key\":\"mit\",\"name\":\"MIT License\",\"spdx_id\":\"MIT\",\"url\":\"https://api.github.com/licenses/mit\"},"
+                + "\"topics\":[\"java\",\"spring-boot\"],\"visibility\":\"public\",\"default_branch\":\"main\","
+                + "\"permissions\":{\"admin\":false,\"push\":false,\"pull\":true}}";
+    }
+}
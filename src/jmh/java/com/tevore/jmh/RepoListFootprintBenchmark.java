@@ -0,0 +1,56 @@
+package com.tevore.jmh;
+
+import com.tevore.domain.CompactRepoList;
+import com.tevore.domain.GithubRepo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap per githubUserRepos entry with the repos as a List<GithubRepo> and as a
+ * CompactRepoList, for users with a few, a typical and a power user's number of repos.
+ * The figure to read is gc.alloc.rate.norm ( bytes per op ) from the GC profiler:
+ *  records  - a list of fresh GithubRepos, everything allocated is what the entry keeps
+ *  compact  - packing a list of records, what the entry keeps plus the encoding's
+ *             temporaries, so an upper bound for the packed form
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RepoListFootprintBenchmark {
+
+    @Param({"5", "60", "1000"})
+    int repoCount;
+
+    private List<GithubRepo> repos;
+
+    @Setup
+    public void setUp() {
+        repos = records();
+    }
+
+    // Names and urls the way Github sends them, every list built from fresh Strings
+    @Benchmark
+    public List<GithubRepo> records() {
+        List<GithubRepo> repos = new ArrayList<>(repoCount);
+        for (int i = 0; i < repoCount; i++) {
+            String name = "project-" + i;
+            repos.add(new GithubRepo(name, "https://api.github.com/repos/some-user/" + name));
+        }
+        return repos;
+    }
+
+    @Benchmark
+    public List<GithubRepo> compact() {
+        return CompactRepoList.of(repos);
+    }
+}
@@ -0,0 +1,149 @@
+package com.tevore.jmh;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.tevore.domain.CompactRepoList;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import com.tevore.service.CacheSnapshotter;
+import com.tevore.service.RevalidationStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restart-to-warm time: how long CacheSnapshotter takes to write the caches out and to read
+ * them back into empty ones, which is how long a restarted instance takes before it reports
+ * ready.
+ * --
+ * Every user has a cached profile and a list of REPOS_PER_USER repos. The RevalidationStore
+ * is left empty so the numbers are for the caches alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SnapshotRestoreBenchmark {
+
+    private static final int REPOS_PER_USER = 30;
+
+    @Param({"1000", "10000", "50000"})
+    int users;
+
+    private Path directory;
+
+    private CacheSnapshotter writer;
+
+    private CacheSnapshotter reader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot-benchmark");
+        Path file = directory.resolve("cache.snapshot");
+
+        CacheManager warm = cacheManager();
+        for (int i = 0; i < users; i++) {
+            String username = "user-" + i;
+            warm.getCache("githubUsers").put(username, user(username));
+            warm.getCache("githubUserRepos").put(username, repos(username));
+        }
+        writer = snapshotter(warm, file);
+        writer.write();
+    }
+
+    // Every restore starts from empty caches, like a restarted instance
+    @Setup(Level.Invocation)
+    public void emptyCaches() {
+        reader = snapshotter(cacheManager(), directory.resolve("cache.snapshot"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        writer.write();
+    }
+
+    @Benchmark
+    public int restore() {
+        return reader.restore();
+    }
+
+    private static CacheSnapshotter snapshotter(CacheManager caches, Path file) {
+        return new CacheSnapshotter(caches, new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(16), 0.25, 0.8),
+                file.toString(), Duration.ofMinutes(5),
+                new StaticListableBeanFactory(Map.of("registry", new SimpleMeterRegistry())).getBeanProvider(MeterRegistry.class));
+    }
+
+    private static CacheManager cacheManager() {
+        CaffeineCacheManager manager = new CaffeineCacheManager();
+        for (String name : List.of("githubUsers", "githubUserRepos")) {
+            manager.registerCustomCache(name, Caffeine.newBuilder()
+                    .expireAfter(new Expiry<Object, Object>() {
+                        @Override
+                        public long expireAfterCreate(Object key, Object value, long currentTime) {
+                            return Duration.ofMinutes(15).toNanos();
+                        }
+
+                        @Override
+                        public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+                            return Duration.ofMinutes(15).toNanos();
+                        }
+
+                        @Override
+                        public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+                            return currentDuration;
+                        }
+                    })
+                    .build());
+        }
+        return manager;
+    }
+
+    private static GithubUser user(String login) {
+        return new GithubUser(login,
+                "https://avatars.githubusercontent.com/u/583231?v=4",
+                "https://api.github.com/users/" + login,
+                "Some User",
+                "Somewhere",
+                null,
+                Instant.parse("2014-03-04T12:24:54Z"));
+    }
+
+    private static List<GithubRepo> repos(String login) {
+        List<GithubRepo> repos = new ArrayList<>(REPOS_PER_USER);
+        for (int i = 0; i < REPOS_PER_USER; i++) {
+            String name = "project-" + i;
+            repos.add(new GithubRepo(name, "https://api.github.com/repos/" + login + "/" + name));
+        }
+        return CompactRepoList.of(repos);
+    }
+}
@@ -0,0 +1,58 @@
+package com.tevore.jmh;
+
+import com.tevore.controller.GithubUsername;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The GithubUsername constraint ( @Pattern + @Size ) that every request is checked
+ * against, for a valid name, one failing the pattern and one failing the length
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UsernameValidationBenchmark {
+
+    @Param({"some-user", "--bad-user", "a-username-that-is-much-too-long-for-github"})
+    String username;
+
+    private ValidatorFactory validatorFactory;
+
+    private Validator validator;
+
+    private Candidate candidate;
+
+    @Setup
+    public void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        candidate = new Candidate(username);
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Candidate>> validate() {
+        return validator.validate(candidate);
+    }
+
+    public record Candidate(@GithubUsername String value) {
+    }
+}
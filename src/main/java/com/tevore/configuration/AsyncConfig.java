@@ -1,16 +1,34 @@
 package com.tevore.configuration;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
 
+/**
+ * spring.threads.virtual.enabled switches both Tomcat's request handling and the
+ * executors below over to virtual threads. In that mode the fixed pools and their
+ * queues are replaced by a virtual thread per task, capped by a semaphore.
+ */
 @Configuration
 public class AsyncConfig {
 
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${github.async.virtual.max-concurrency:500}")
+    private int maxConcurrency;
+
+    @Value("${github.async.virtual.repo-pages-max-concurrency:100}")
+    private int repoPagesMaxConcurrency;
+
     @Bean(name = "asyncExecutor")
     public Executor asyncExecutor() {
+        if (virtualThreads) {
+            return new BoundedVirtualThreadExecutor("github-service-", maxConcurrency);
+        }
         ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
         exec.setCorePoolSize(20);
         exec.setMaxPoolSize(50);
@@ -19,4 +37,22 @@ public class AsyncConfig {
         exec.initialize();
         return exec;
     }
+
+    /**
+     * Kept apart from the asyncExecutor since the repo calls running there block
+     * while waiting on the pages fetched here
+     */
+    @Bean(name = "repoPageExecutor")
+    public Executor repoPageExecutor() {
+        if (virtualThreads) {
+            return new BoundedVirtualThreadExecutor("github-repo-pages-", repoPagesMaxConcurrency);
+        }
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(8);
+        exec.setMaxPoolSize(16);
+        exec.setQueueCapacity(500);
+        exec.setThreadNamePrefix("github-repo-pages-");
+        exec.initialize();
+        return exec;
+    }
 }
@@ -0,0 +1,65 @@
+package com.tevore.configuration;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Starts a new virtual thread per task, with a semaphore capping how many tasks run at once.
+ * There is no queue and no waiting: a task submitted while every slot is busy is rejected
+ * right away, so a submitter is never held up, whether it is a request thread or the timer
+ * the AsyncRetrier schedules its next attempts from. Blocking calls and retry backoffs park the virtual thread instead of
+ * holding on to a platform thread, so the cap can be set by what Github and memory can take
+ * rather than by how many threads we can afford.
+ */
+public class BoundedVirtualThreadExecutor implements Executor {
+
+    private final ThreadFactory threadFactory;
+
+    private final Semaphore permits;
+
+    private final int maxConcurrency;
+
+    private final LongAdder rejected = new LongAdder();
+
+    public BoundedVirtualThreadExecutor(String threadNamePrefix, int maxConcurrency) {
+        this.threadFactory = Thread.ofVirtual().name(threadNamePrefix, 0).factory();
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("All " + maxConcurrency + " slots are busy");
+        }
+
+        try {
+            threadFactory.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            }).start();
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,206 @@
+package com.tevore.configuration;
+
+import com.tevore.domain.CompactRepoList;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary form of the githubUsers / githubUserRepos cache values for keeping them outside the heap.
+ * A user is its seven fields, a repo list its names with the url prefix written once and only
+ * the urls that don't follow it, the same way CompactRepoList keeps them on the heap.
+ * --
+ * The first byte says how the rest is stored: as is, or deflated when compression is asked for
+ * and the value is large enough for it to pay off. Values of any other type aren't encoded.
+ */
+public final class CacheEntryCodec {
+
+    private static final byte RAW = 0;
+    private static final byte DEFLATED = 1;
+
+    private static final byte USER = 1;
+    private static final byte REPOS = 2;
+
+    // Below this deflate's header and dictionary warm-up eat most of the saving
+    private static final int COMPRESS_FROM = 512;
+
+    private CacheEntryCodec() {
+    }
+
+    /**
+     * The encoded value, or null for a value of a type this codec doesn't know
+     */
+    public static byte[] encode(Object value, boolean compress) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            switch (value) {
+                case GithubUser user -> writeUser(out, user);
+                case List<?> list when isRepos(list) -> writeRepos(out, list);
+                case null, default -> {
+                    return null;
+                }
+            }
+        } catch (IOException ex) {
+            // A string past writeUTF's 64KB, nothing Github sends
+            return null;
+        }
+
+        byte[] raw = bytes.toByteArray();
+        return compress && raw.length >= COMPRESS_FROM ? deflate(raw) : prepend(RAW, raw);
+    }
+
+    public static Object decode(byte[] encoded) {
+        byte[] raw = encoded[0] == DEFLATED ? inflate(encoded) : Arrays.copyOfRange(encoded, 1, encoded.length);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+            return switch (in.readByte()) {
+                case USER -> readUser(in);
+                case REPOS -> readRepos(in);
+                default -> throw new IllegalArgumentException("Unknown cache entry type");
+            };
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void writeUser(DataOutputStream out, GithubUser user) throws IOException {
+        out.writeByte(USER);
+        writeNullable(out, user.login());
+        writeNullable(out, user.avatarUrl());
+        writeNullable(out, user.url());
+        writeNullable(out, user.name());
+        writeNullable(out, user.location());
+        writeNullable(out, user.email());
+        out.writeBoolean(user.createdAt() != null);
+        if (user.createdAt() != null) {
+            out.writeLong(user.createdAt().getEpochSecond());
+            out.writeInt(user.createdAt().getNano());
+        }
+    }
+
+    private static GithubUser readUser(DataInputStream in) throws IOException {
+        return new GithubUser(
+                readNullable(in),
+                readNullable(in),
+                readNullable(in),
+                readNullable(in),
+                readNullable(in),
+                readNullable(in),
+                in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null
+        );
+    }
+
+    // Every url that is prefix + name is a single byte
+    private static void writeRepos(DataOutputStream out, List<?> list) throws IOException {
+        String prefix = "";
+        if (!list.isEmpty() && list.get(0) instanceof GithubRepo first
+                && first.name() != null && first.url() != null && first.url().endsWith(first.name())) {
+            prefix = first.url().substring(0, first.url().length() - first.name().length());
+        }
+
+        out.writeByte(REPOS);
+        out.writeUTF(prefix);
+        out.writeInt(list.size());
+        for (Object element : list) {
+            GithubRepo repo = (GithubRepo) element;
+            writeNullable(out, repo.name());
+            boolean prefixed = repo.name() != null && repo.url() != null
+                    && repo.url().length() == prefix.length() + repo.name().length()
+                    && repo.url().startsWith(prefix) && repo.url().endsWith(repo.name());
+            out.writeBoolean(prefixed);
+            if (!prefixed) writeNullable(out, repo.url());
+        }
+    }
+
+    private static List<GithubRepo> readRepos(DataInputStream in) throws IOException {
+        String prefix = in.readUTF();
+        int size = in.readInt();
+        List<GithubRepo> repos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = readNullable(in);
+            String url = in.readBoolean() ? prefix + name : readNullable(in);
+            repos.add(new GithubRepo(name, url));
+        }
+        return CompactRepoList.of(repos);
+    }
+
+    private static boolean isRepos(List<?> list) {
+        for (Object element : list) {
+            if (!(element instanceof GithubRepo)) return false;
+        }
+        return true;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 8);
+            out.write(DEFLATED);
+            out.write(raw.length >>> 24);
+            out.write(raw.length >>> 16);
+            out.write(raw.length >>> 8);
+            out.write(raw.length);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            // Incompressible, e.g. a few long random names
+            return out.size() < raw.length + 1 ? out.toByteArray() : prepend(RAW, raw);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] encoded) {
+        int length = ((encoded[1] & 0xFF) << 24) | ((encoded[2] & 0xFF) << 16)
+                | ((encoded[3] & 0xFF) << 8) | (encoded[4] & 0xFF);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(encoded, 5, encoded.length - 5);
+            byte[] raw = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, read, length - read);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated cache entry");
+                }
+                read += inflated;
+            }
+            return raw;
+        } catch (DataFormatException ex) {
+            throw new IllegalArgumentException("Corrupt cache entry", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] prepend(byte format, byte[] raw) {
+        byte[] encoded = new byte[raw.length + 1];
+        encoded[0] = format;
+        System.arraycopy(raw, 0, encoded, 1, raw.length);
+        return encoded;
+    }
+}
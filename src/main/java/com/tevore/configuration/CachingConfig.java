@@ -1,29 +1,206 @@
 package com.tevore.configuration;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.tevore.service.GithubClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.HttpClientErrorException;
 
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
+/**
+ * Entries are fresh for github.cache.ttl. With refresh-ahead on, a read after that point
+ * is answered with the cached value right away while Caffeine runs a single background
+ * reload on the cacheRefreshExecutor ( stale-while-revalidate ). The reload is a
+ * conditional call, so an unchanged user only costs a 304.
+ * A failed reload keeps the stale value; a 404 drops it. Entries nobody reads expire
+ * github.cache.stale-while-revalidate after they stopped being fresh.
+ * Reloads are admitted at background priority by the GithubRateLimiter, so when the
+ * budget is low they are skipped and the stale value is kept rather than starving callers.
+ * Both caches record stats, which Spring Boot publishes as cache.gets / cache.puts /
+ * cache.evictions / cache.load.duration tagged with the cache name.
+ * --
+ * The caches are bounded by memory, not entry count: what github.cache.memory-budget leaves
+ * after the RevalidationStore's github.cache.revalidation-share and the SerializedResponseCache's
+ * github.cache.response-share is split between them by
+ * github.cache.repos-share and entries are weighed by the bytes they retain
+ * ( RetainedSizeWeigher ). Past its share a cache evicts the entries least likely to be read
+ * again, so a scraper walking random usernames can't grow the heap until the TTL runs out.
+ * The weighted sizes are published as cache.weighted.size ( see MetricsConfig ).
+ * --
+ * With github.cache.l2.enabled ( off by default ), what a cache evicts for size goes to an
+ * off-heap second tier instead of being forgotten ( OffHeapTieredCache ): github.cache.l2.capacity
+ * of direct memory, split the same way, where entries stay for github.cache.l2.ttl. An L1 miss
+ * is looked up there before Github is called, so far more users stay warm than the heap budget holds.
+ * --
+ * Both caches are Caffeine AsyncCaches: GithubClient puts the future of a load in as soon as
+ * it starts, so callers missing the same username wait on that one load instead of each
+ * holding a thread on it ( see SingleFlight ). A load in flight weighs nothing and does
+ * not expire, its weight and lifetime are set once it completes.
+ */
 @Configuration
 @ConditionalOnMissingBean(CacheManager.class)
 public class CachingConfig {
 
-    @Bean
-    public Caffeine<Object, Object> caffeineConfig() {
-        return Caffeine.newBuilder()
-                .expireAfterWrite(5, TimeUnit.MINUTES);
+    @Value("${github.cache.ttl:5m}")
+    private Duration ttl;
+
+    @Value("${github.cache.stale-while-revalidate:10m}")
+    private Duration staleWhileRevalidate;
+
+    @Value("${github.cache.refresh-ahead:true}")
+    private boolean refreshAhead;
+
+    @Value("${github.cache.memory-budget:64MB}")
+    private DataSize memoryBudget;
+
+    @Value("${github.cache.revalidation-share:0.25}")
+    private double revalidationShare;
+
+    @Value("${github.cache.response-share:0.1}")
+    private double responseShare;
+
+    @Value("${github.cache.repos-share:0.8}")
+    private double reposShare;
+
+    @Value("${github.cache.l2.enabled:false}")
+    private boolean l2Enabled;
+
+    @Value("${github.cache.l2.capacity:256MB}")
+    private DataSize l2Capacity;
+
+    @Value("${github.cache.l2.segment-size:16MB}")
+    private DataSize l2SegmentSize;
+
+    @Value("${github.cache.l2.ttl:1h}")
+    private Duration l2Ttl;
+
+    @Value("${github.cache.l2.compress:false}")
+    private boolean l2Compress;
+
+    @Bean(name = "cacheRefreshExecutor")
+    public Executor cacheRefreshExecutor() {
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(2);
+        exec.setMaxPoolSize(4);
+        exec.setQueueCapacity(100);
+        exec.setThreadNamePrefix("cache-refresh-");
+        exec.initialize();
+        return exec;
     }
 
     @Bean
-    public CacheManager cacheManager(Caffeine<Object, Object> caffeine) {
-        CaffeineCacheManager manager =
-                new CaffeineCacheManager("githubUsers", "githubUserRepos");
-        manager.setCaffeine(caffeine);
+    public CacheManager cacheManager(@Qualifier("cacheRefreshExecutor") Executor refreshExecutor,
+                                     ObjectProvider<GithubClient> githubClient) {
+        long cachesBudget = (long) (memoryBudget.toBytes() * (1 - revalidationShare - responseShare));
+        long reposBudget = (long) (cachesBudget * reposShare);
+        long usersBudget = cachesBudget - reposBudget;
+
+        Map<String, OffHeapStore> l2 = new HashMap<>();
+        if (l2Enabled) {
+            long reposL2 = (long) (l2Capacity.toBytes() * reposShare);
+            l2.put("githubUsers", new OffHeapStore(l2Capacity.toBytes() - reposL2, (int) l2SegmentSize.toBytes(), l2Ttl));
+            l2.put("githubUserRepos", new OffHeapStore(reposL2, (int) l2SegmentSize.toBytes(), l2Ttl));
+        }
+
+        CaffeineCacheManager manager = new CaffeineCacheManager() {
+            @Override
+            protected Cache adaptCaffeineCache(String name, AsyncCache<Object, Object> cache) {
+                OffHeapStore store = l2.get(name);
+                return store == null
+                        ? super.adaptCaffeineCache(name, cache)
+                        : new OffHeapTieredCache(name, cache, store, ttl, isAllowNullValues());
+            }
+        };
+        manager.setAsyncCacheMode(true);
+        Caffeine<Object, Object> users = caffeine(usersBudget, refreshExecutor, l2.get("githubUsers"));
+        Caffeine<Object, Object> repos = caffeine(reposBudget, refreshExecutor, l2.get("githubUserRepos"));
+        if (refreshAhead) {
+            manager.registerCustomCache("githubUsers",
+                    users.buildAsync(refreshingLoader(username -> githubClient.getObject().refreshUser(username))));
+            manager.registerCustomCache("githubUserRepos",
+                    repos.buildAsync(refreshingLoader(username -> githubClient.getObject().refreshRepos(username))));
+        } else {
+            manager.registerCustomCache("githubUsers", users.buildAsync());
+            manager.registerCustomCache("githubUserRepos", repos.buildAsync());
+        }
         return manager;
     }
+
+    // A builder per cache, since each gets its own maximumWeight and second tier
+    private Caffeine<Object, Object> caffeine(long maximumWeight, Executor refreshExecutor, OffHeapStore l2) {
+        Caffeine<Object, Object> caffeine = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher(new RetainedSizeWeigher())
+                .recordStats();
+        if (l2 != null) {
+            caffeine = caffeine.evictionListener(OffHeapTieredCache.demoteTo(l2, l2Compress));
+        }
+        if (!refreshAhead) {
+            return caffeine.expireAfter(afterWrite(ttl));
+        }
+        return caffeine
+                .refreshAfterWrite(ttl)
+                .expireAfter(afterWrite(ttl.plus(staleWhileRevalidate)))
+                .executor(refreshExecutor);
+    }
+
+    /**
+     * expireAfterWrite, but as a variable expiry so that an entry restored from a snapshot can
+     * be put back with the lifetime it had left ( see CacheSnapshotter )
+     */
+    private static Expiry<Object, Object> afterWrite(Duration lifetime) {
+        long nanos = lifetime.toNanos();
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(Object key, Object value, long currentTime) {
+                return nanos;
+            }
+
+            @Override
+            public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+                return nanos;
+            }
+
+            @Override
+            public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+
+    // Returning null from a reload removes the entry, which is what we want for a deleted user
+    private static CacheLoader<Object, Object> refreshingLoader(Function<String, Object> upstream) {
+        return new CacheLoader<>() {
+            @Override
+            public Object load(Object key) {
+                return upstream.apply((String) key);
+            }
+
+            @Override
+            public Object reload(Object key, Object oldValue) {
+                try {
+                    return upstream.apply((String) key);
+                } catch (HttpClientErrorException.NotFound ex) {
+                    return null;
+                }
+            }
+        };
+    }
 }
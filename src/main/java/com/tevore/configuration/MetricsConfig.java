@@ -0,0 +1,128 @@
+package com.tevore.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executor saturation, which otherwise only shows up as 500s once the queues overflow.
+ * --
+ * Spring Boot already publishes executor.active / executor.queued / executor.pool.size for
+ * every ThreadPoolTaskExecutor bean, tagged with the bean name. On top of that:
+ *  executor.rejected                    tasks turned away by a pool, counted before the
+ *                                       pool's own RejectedExecutionHandler runs
+ *  executor.active / executor.pool.max  and executor.rejected for the
+ *                                       BoundedVirtualThreadExecutors Boot knows nothing about
+ * Cache stats come from Boot binding the Caffeine caches ( see recordStats() in CachingConfig ),
+ * cache.weighted.size / cache.max.weight from the weight bound of those caches,
+ * cache.l2.* from the off-heap tier behind them ( OffHeapTieredCache ),
+ * upstream calls and retries from GithubClientMetrics and AsyncRetrier.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder executorMetrics(Map<String, Executor> executors) {
+        return registry -> executors.forEach((name, executor) -> {
+            if (executor instanceof ThreadPoolTaskExecutor pool) {
+                Counter rejected = Counter.builder("executor.rejected")
+                        .description("Tasks rejected by the executor")
+                        .tag("name", name)
+                        .register(registry);
+                ThreadPoolExecutor threadPool = pool.getThreadPoolExecutor();
+                RejectedExecutionHandler handler = threadPool.getRejectedExecutionHandler();
+                threadPool.setRejectedExecutionHandler((task, rejectingPool) -> {
+                    rejected.increment();
+                    handler.rejectedExecution(task, rejectingPool);
+                });
+            } else if (executor instanceof BoundedVirtualThreadExecutor virtual) {
+                Gauge.builder("executor.active", virtual, BoundedVirtualThreadExecutor::getActiveCount)
+                        .description("Tasks currently running")
+                        .tag("name", name)
+                        .register(registry);
+                Gauge.builder("executor.pool.max", virtual, BoundedVirtualThreadExecutor::getMaxConcurrency)
+                        .description("Most tasks allowed to run at once")
+                        .tag("name", name)
+                        .register(registry);
+                FunctionCounter.builder("executor.rejected", virtual, BoundedVirtualThreadExecutor::getRejectedCount)
+                        .description("Tasks rejected by the executor")
+                        .tag("name", name)
+                        .register(registry);
+            }
+        });
+    }
+
+    /**
+     * How many bytes each memory-bounded cache holds by RetainedSizeWeigher's estimate, and
+     * its share of github.cache.memory-budget. Caches without a weight bound are skipped.
+     * For a cache with an off-heap tier, also its entries, the bytes they take out of
+     * github.cache.l2.capacity and how many L1 misses it answered.
+     */
+    @Bean
+    public MeterBinder cacheWeightMetrics(CacheManager cacheManager) {
+        return registry -> cacheManager.getCacheNames().forEach(name -> {
+            Cache cache = cacheManager.getCache(name);
+            if (cache instanceof OffHeapTieredCache tiered) {
+                offHeapMetrics(registry, name, tiered);
+            }
+            if (cache == null
+                    || !(cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeine)) {
+                return;
+            }
+            caffeine.policy().eviction()
+                    .filter(eviction -> eviction.isWeighted())
+                    .ifPresent(eviction -> {
+                        Gauge.builder("cache.weighted.size", eviction, e -> e.weightedSize().orElse(0))
+                                .description("Estimated bytes retained by the cache entries")
+                                .baseUnit("bytes")
+                                .tag("cache", name)
+                                .register(registry);
+                        Gauge.builder("cache.max.weight", eviction, e -> e.getMaximum())
+                                .description("Bytes the cache may retain before it evicts")
+                                .baseUnit("bytes")
+                                .tag("cache", name)
+                                .register(registry);
+                    });
+        });
+    }
+
+    private static void offHeapMetrics(MeterRegistry registry, String name, OffHeapTieredCache tiered) {
+        OffHeapStore store = tiered.getStore();
+        Gauge.builder("cache.l2.size", store, OffHeapStore::size)
+                .description("Entries held off-heap")
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("cache.l2.used", store, OffHeapStore::liveBytes)
+                .description("Direct memory taken by the entries held off-heap")
+                .baseUnit("bytes")
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("cache.l2.capacity", store, OffHeapStore::capacity)
+                .description("Direct memory the off-heap tier may use")
+                .baseUnit("bytes")
+                .tag("cache", name)
+                .register(registry);
+        FunctionCounter.builder("cache.l2.gets", tiered, OffHeapTieredCache::getHitCount)
+                .description("L1 misses looked up off-heap")
+                .tag("cache", name)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.l2.gets", tiered, OffHeapTieredCache::getMissCount)
+                .description("L1 misses looked up off-heap")
+                .tag("cache", name)
+                .tag("result", "miss")
+                .register(registry);
+    }
+}
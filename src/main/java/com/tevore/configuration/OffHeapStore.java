@@ -0,0 +1,175 @@
+package com.tevore.configuration;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte values by key in direct memory, outside the heap and out of the GC's way. The capacity is
+ * split into fixed size segments, allocated as they are first needed and written to like a log:
+ * a value is appended to the current segment and once that is full the oldest segment is
+ * cleared and written over, dropping whatever was still in it ( FIFO eviction ).
+ * Values expire ttl after they were put. Only the index of key to position is on the heap.
+ * --
+ * Writes are serialized, reads are not: a read copies the bytes out and then checks that the
+ * segment was not recycled meanwhile, the way a seqlock reader would, and the key stored with
+ * the value is compared as well. A read that loses that race is a miss.
+ * The generation is bumped before a segment is written over, with a store-store fence so that
+ * none of the plain buffer writes can become visible ahead of it; the reader pairs it with a
+ * load-load fence between its copy and its second look at the generation.
+ */
+public final class OffHeapStore {
+
+    private final Segment[] segments;
+    private final int segmentSize;
+    private final Duration ttl;
+    private final ConcurrentHashMap<String, Slot> index = new ConcurrentHashMap<>();
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    // Guarded by this
+    private int current;
+
+    public OffHeapStore(long capacity, int segmentSize, Duration ttl) {
+        int count = (int) Math.max(1, Math.min(capacity / segmentSize, Short.MAX_VALUE));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+        this.segmentSize = segmentSize;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Stores value for key, replacing what was stored for it. A value that doesn't fit in a
+     * segment is not stored, and neither is anything stored for the key before.
+     */
+    public synchronized void put(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = 8 + keyBytes.length + value.length;
+        if (length > segmentSize) {
+            remove(key);
+            return;
+        }
+
+        Segment segment = segments[current];
+        if (segment.position + length > segmentSize) {
+            current = (current + 1) % segments.length;
+            segment = segments[current];
+            recycle(current, segment);
+        }
+        if (segment.buffer == null) {
+            segment.buffer = ByteBuffer.allocateDirect(segmentSize);
+        }
+
+        int offset = segment.position;
+        segment.buffer.putInt(offset, keyBytes.length);
+        segment.buffer.put(offset + 4, keyBytes);
+        segment.buffer.putInt(offset + 4 + keyBytes.length, value.length);
+        segment.buffer.put(offset + 8 + keyBytes.length, value);
+        segment.position += length;
+
+        long now = System.currentTimeMillis();
+        Slot slot = new Slot(current, segment.generation, offset, length, now, now + ttl.toMillis());
+        liveBytes.addAndGet(length);
+        Slot replaced = index.put(key, slot);
+        if (replaced != null) liveBytes.addAndGet(-replaced.length());
+    }
+
+    /**
+     * The value stored for key and when it was stored, or null when there is none or it expired
+     */
+    public Stored get(String key) {
+        Slot slot = index.get(key);
+        if (slot == null) return null;
+        if (System.currentTimeMillis() > slot.expiresAt()) {
+            if (index.remove(key, slot)) liveBytes.addAndGet(-slot.length());
+            return null;
+        }
+
+        Segment segment = segments[slot.segment()];
+        byte[] record = new byte[slot.length()];
+        segment.buffer.get(slot.offset(), record);
+        // The copy has to be complete before the generation is read again
+        VarHandle.loadLoadFence();
+        if (segment.generation != slot.generation()) return null;
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int keyLength = ByteBuffer.wrap(record).getInt(0);
+        if (keyLength != keyBytes.length
+                || !Arrays.equals(record, 4, 4 + keyLength, keyBytes, 0, keyBytes.length)) {
+            return null;
+        }
+        return new Stored(Arrays.copyOfRange(record, 8 + keyLength, record.length), Instant.ofEpochMilli(slot.storedAt()));
+    }
+
+    public void remove(String key) {
+        Slot removed = index.remove(key);
+        if (removed != null) liveBytes.addAndGet(-removed.length());
+    }
+
+    public synchronized void clear() {
+        index.clear();
+        liveBytes.set(0);
+        for (Segment segment : segments) {
+            segment.generation++;
+            VarHandle.storeStoreFence();
+            segment.position = 0;
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Bytes held by values still reachable through the index, keys and framing included.
+     * Space taken by replaced or expired values is only given back when their segment is recycled.
+     */
+    public long liveBytes() {
+        return liveBytes.get();
+    }
+
+    public long capacity() {
+        return (long) segments.length * segmentSize;
+    }
+
+    // Readers of the old contents see the new generation and give up before the segment is written over
+    private void recycle(int number, Segment segment) {
+        segment.generation++;
+        // A volatile write only orders what came before it, the overwrites in put come after
+        VarHandle.storeStoreFence();
+        for (int offset = 0; offset < segment.position; ) {
+            int keyLength = segment.buffer.getInt(offset);
+            int valueLength = segment.buffer.getInt(offset + 4 + keyLength);
+            byte[] keyBytes = new byte[keyLength];
+            segment.buffer.get(offset + 4, keyBytes);
+
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            Slot slot = index.get(key);
+            if (slot != null && slot.segment() == number && slot.offset() == offset && index.remove(key, slot)) {
+                liveBytes.addAndGet(-slot.length());
+            }
+            offset += 8 + keyLength + valueLength;
+        }
+        segment.position = 0;
+    }
+
+    public record Stored(byte[] value, Instant storedAt) {
+    }
+
+    // Epoch millis rather than Instants, this is the part that stays on the heap for every entry
+    private record Slot(int segment, long generation, int offset, int length, long storedAt, long expiresAt) {
+    }
+
+    private static final class Segment {
+        private ByteBuffer buffer;
+        private volatile long generation;
+        // Guarded by the store
+        private int position;
+    }
+}
@@ -0,0 +1,200 @@
+package com.tevore.configuration;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Caffeine cache ( L1, on the heap ) with an OffHeapStore behind it ( L2 ). Entries Caffeine
+ * evicts for size are encoded by CacheEntryCodec and written to L2 instead of being dropped;
+ * a miss in L1 is looked up in L2 before it turns into a call to Github, and a hit moves the
+ * entry back into L1. An entry lives in one tier at a time: putting or evicting a key
+ * through this cache removes it from L2.
+ * --
+ * Entries that expired in L1 are not demoted, they are past stale-while-revalidate.
+ * An entry promoted after more than freshFor in L2 is refreshed in the background right away
+ * when L1 is a LoadingCache ( refresh-ahead ), so the caller gets it without waiting while
+ * Github confirms it, usually with a 304. Without refresh-ahead such an entry counts as a miss.
+ * --
+ * L1 may be a Caffeine AsyncCache, everything here then goes through its synchronous view.
+ */
+public class OffHeapTieredCache extends CaffeineCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapTieredCache.class);
+
+    private final OffHeapStore store;
+    private final Duration freshFor;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public OffHeapTieredCache(String name,
+                              com.github.benmanes.caffeine.cache.Cache<Object, Object> cache,
+                              OffHeapStore store,
+                              Duration freshFor,
+                              boolean allowNullValues) {
+        super(name, cache, allowNullValues);
+        this.store = store;
+        this.freshFor = freshFor;
+    }
+
+    public OffHeapTieredCache(String name,
+                              AsyncCache<Object, Object> cache,
+                              OffHeapStore store,
+                              Duration freshFor,
+                              boolean allowNullValues) {
+        super(name, cache, allowNullValues);
+        this.store = store;
+        this.freshFor = freshFor;
+    }
+
+    /**
+     * Writes what L1 evicts for size into store, to be set on the Caffeine builder of L1
+     */
+    public static RemovalListener<Object, Object> demoteTo(OffHeapStore store, boolean compress) {
+        return (key, value, cause) -> {
+            if (cause != RemovalCause.SIZE || key == null || value == null) return;
+            byte[] encoded = CacheEntryCodec.encode(value, compress);
+            if (encoded != null) store.put(key.toString(), encoded);
+        };
+    }
+
+    /**
+     * The L2 entry for key moved into L1, or null when L2 has none.
+     * For callers peeking at L1 natively, which would otherwise miss what L2 holds.
+     */
+    public Object promote(Object key) {
+        FromStore taken = takeFromStore(key);
+        if (taken == null) return null;
+
+        getNativeCache().put(key, taken.value());
+        if (taken.stale()) refresh(key);
+        return taken.value();
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        // Peek first, a LoadingCache's lookup would load from Github before L2 had a chance
+        Object value = getNativeCache().getIfPresent(key);
+        if (value != null) return value;
+        value = promote(key);
+        return value != null ? value : super.lookup(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        // The loader runs inside Caffeine's compute for the key, so it only takes the entry
+        // out of L2 and the refresh waits until Caffeine has stored it
+        AtomicBoolean stale = new AtomicBoolean();
+        T value = super.get(key, () -> {
+            FromStore taken = takeFromStore(key);
+            if (taken == null) return valueLoader.call();
+            stale.set(taken.stale());
+            return (T) taken.value();
+        });
+        if (stale.get()) refresh(key);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        // Removed first, so an eviction of the new value right after the put survives
+        store.remove(key.toString());
+        super.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        store.remove(key.toString());
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        super.evict(key);
+        store.remove(key.toString());
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = super.evictIfPresent(key);
+        boolean stored = store.get(key.toString()) != null;
+        store.remove(key.toString());
+        return present || stored;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        store.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean notEmpty = super.invalidate() | store.size() > 0;
+        store.clear();
+        return notEmpty;
+    }
+
+    public OffHeapStore getStore() {
+        return store;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private void refresh(Object key) {
+        if (getNativeCache() instanceof LoadingCache<Object, Object> loading) {
+            loading.refresh(key);
+        }
+    }
+
+    /**
+     * Removes and decodes the L2 entry for key. An entry that has been in L2 longer than
+     * freshFor comes back as stale, or not at all without a LoadingCache to refresh it.
+     */
+    private FromStore takeFromStore(Object key) {
+        String storeKey = key.toString();
+        OffHeapStore.Stored stored = store.get(storeKey);
+        if (stored == null) {
+            misses.increment();
+            return null;
+        }
+        store.remove(storeKey);
+
+        Object value;
+        try {
+            value = CacheEntryCodec.decode(stored.value());
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Dropping unreadable off-heap entry for key={} in cache={}", storeKey, getName(), ex);
+            misses.increment();
+            return null;
+        }
+
+        boolean stale = Duration.between(stored.storedAt(), Instant.now()).compareTo(freshFor) > 0;
+        if (stale && !(getNativeCache() instanceof LoadingCache)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new FromStore(value, stale);
+    }
+
+    private record FromStore(Object value, boolean stale) {
+    }
+}
@@ -1,15 +1,108 @@
 package com.tevore.configuration;
 
+import com.tevore.service.GithubRateLimiter;
+import com.tevore.service.GithubRepoPageConverter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
+import tools.jackson.databind.json.JsonMapper;
 
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+
+/**
+ * One JDK HttpClient is shared by every Github call so connections to api.github.com
+ * outlive a single request. With HTTP/2 ( github.http.version ) all calls are multiplexed
+ * over a single connection, so a miss no longer pays for a TCP and TLS handshake;
+ * plain http upstreams ( tests, the stub ) fall back to pooled HTTP/1.1 keep-alive connections.
+ * --
+ * REST and GraphQL get their own RestClient over that HttpClient so they can have their
+ * own read timeout, since a GraphQL call for a user with many repos takes longer than a
+ * single page. Both ask for gzip ( GzipResponseInterceptor ).
+ * github.http.tls.handshakes counts the TLS connections opened; against github.client.requests
+ * it gives the share of calls that reused a connection.
+ * --
+ * The size of the HTTP/1.1 pool and how long idle connections are kept are JVM wide
+ * jdk.httpclient.* system properties, read once when the first HttpClient is created, so
+ * they are launch flags rather than application properties ( see the Dockerfile and bootRun ).
+ */
 @Configuration
 public class RestClientConfig {
 
+    @Value("${github.http.version:HTTP_2}")
+    private HttpClient.Version version;
+
+    @Value("${github.http.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${github.http.rest.read-timeout:5s}")
+    private Duration restReadTimeout;
+
+    @Value("${github.http.graphql.read-timeout:10s}")
+    private Duration graphqlReadTimeout;
+
     @Bean
-    RestClient restClient(RestClient.Builder builder) {
-        return builder.build();
+    HttpClient githubHttpClient(ObjectProvider<MeterRegistry> meterRegistry) {
+        Counter handshakes = Counter.builder("github.http.tls.handshakes")
+                .description("TLS connections opened to Github")
+                .register(meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .sslContext(new HandshakeCountingSslContext(defaultSslContext(), handshakes))
+                .build();
     }
-}
 
+    @Bean
+    @Primary
+    RestClient restClient(RestClient.Builder builder,
+                          @Qualifier("githubHttpClient") HttpClient httpClient,
+                          GithubRateLimiter rateLimiter,
+                          JsonMapper jsonMapper) {
+        return githubRestClient(builder, httpClient, restReadTimeout, rateLimiter, jsonMapper);
+    }
+
+    @Bean
+    RestClient graphqlRestClient(RestClient.Builder builder,
+                                 @Qualifier("githubHttpClient") HttpClient httpClient,
+                                 GithubRateLimiter rateLimiter,
+                                 JsonMapper jsonMapper) {
+        return githubRestClient(builder, httpClient, graphqlReadTimeout, rateLimiter, jsonMapper);
+    }
+
+    // The builder is a prototype bean, so each RestClient starts from a fresh one
+    private static RestClient githubRestClient(RestClient.Builder builder,
+                                               HttpClient httpClient,
+                                               Duration readTimeout,
+                                               GithubRateLimiter rateLimiter,
+                                               JsonMapper jsonMapper) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        return builder
+                .requestFactory(requestFactory)
+                .requestInterceptor(new GzipResponseInterceptor())
+                .requestInterceptor(rateLimiter.interceptor())
+                .messageConverters(converters -> converters.add(0, new GithubRepoPageConverter(jsonMapper)))
+                .build();
+    }
+
+    private static SSLContext defaultSslContext() {
+        try {
+            return SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("No default SSLContext available", ex);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.tevore.configuration;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.tevore.domain.CompactRepoList;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import com.tevore.domain.GithubUserWithReposResponse;
+import com.tevore.service.RepoPages;
+import com.tevore.service.SerializedResponse;
+import com.tevore.service.ValidatedResponse;
+
+import java.util.List;
+
+/**
+ * Weighs a cache entry by an estimate of the bytes it keeps on the heap, so the caches
+ * can be bounded by memory rather than by entry count: one user with 3000 repos costs as
+ * much as a few hundred users with a handful each.
+ * --
+ * The estimate assumes a 64-bit JVM with compressed oops and compact strings
+ * ( Latin-1 logins and urls take a byte per char ), objects aligned to 8 bytes.
+ * It only has to be right within a few percent to size the heap with, not exact.
+ */
+public final class RetainedSizeWeigher implements Weigher<Object, Object> {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    // Caffeine's node for an expiring, weighed entry plus its slot in the hash table
+    static final int ENTRY_OVERHEAD = 96;
+
+    private static final int STRING = align(OBJECT_HEADER + REFERENCE + 4 + 1 + 1);
+    private static final int INSTANT = align(OBJECT_HEADER + 8 + 4);
+    private static final int USER = align(OBJECT_HEADER + 7 * REFERENCE);
+    private static final int REPO = align(OBJECT_HEADER + 2 * REFERENCE);
+    private static final int LIST = align(OBJECT_HEADER + REFERENCE + 4);
+    private static final int VALIDATED = align(OBJECT_HEADER + 4 * REFERENCE);
+    private static final int PAGES = align(OBJECT_HEADER + REFERENCE);
+    private static final int RESPONSE = align(OBJECT_HEADER + 8 * REFERENCE);
+    private static final int SERIALIZED = align(OBJECT_HEADER + 2 * REFERENCE);
+
+    @Override
+    public int weigh(Object key, Object value) {
+        long bytes = ENTRY_OVERHEAD + estimate(key) + estimate(value);
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    public static long estimate(Object value) {
+        return switch (value) {
+            case null -> 0;
+            case String text -> string(text);
+            case GithubUser user -> user(user);
+            case GithubRepo repo -> repo(repo);
+            case CompactRepoList compact -> compact.retainedBytes();
+            case ValidatedResponse<?> response -> validated(response);
+            case RepoPages pages -> PAGES + list(pages.pages());
+            case GithubUserWithReposResponse response -> response(response);
+            case SerializedResponse json -> SERIALIZED + align(ARRAY_HEADER + (long) json.length()) + string(json.etag());
+            case List<?> list -> list(list);
+            default -> OBJECT_HEADER;
+        };
+    }
+
+    private static long user(GithubUser user) {
+        return USER
+                + string(user.login())
+                + string(user.avatarUrl())
+                + string(user.url())
+                + string(user.name())
+                + string(user.location())
+                + string(user.email())
+                + (user.createdAt() == null ? 0 : INSTANT);
+    }
+
+    private static long repo(GithubRepo repo) {
+        return REPO + string(repo.name()) + string(repo.url());
+    }
+
+    private static long validated(ValidatedResponse<?> response) {
+        return VALIDATED
+                + estimate(response.body())
+                + string(response.etag())
+                + string(response.lastModified())
+                + (response.receivedAt() == null ? 0 : INSTANT);
+    }
+
+    private static long response(GithubUserWithReposResponse response) {
+        return RESPONSE
+                + string(response.login())
+                + string(response.avatarUrl())
+                + string(response.url())
+                + string(response.name())
+                + string(response.location())
+                + string(response.email())
+                + string(response.createdAt())
+                + estimate(response.repos());
+    }
+
+    private static long list(List<?> list) {
+        long bytes = LIST + align(ARRAY_HEADER + (long) REFERENCE * list.size());
+        for (Object element : list) {
+            bytes += estimate(element);
+        }
+        return bytes;
+    }
+
+    private static long string(String text) {
+        if (text == null) return 0;
+        int bytesPerChar = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return STRING + align(ARRAY_HEADER + (long) text.length() * bytesPerChar);
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 7) & ~7;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
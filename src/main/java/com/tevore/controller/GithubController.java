@@ -1,13 +1,46 @@
 package com.tevore.controller;
 
+import com.tevore.domain.BatchUserLookupRequest;
+import com.tevore.domain.BatchUserLookupResponse;
+import com.tevore.domain.BatchUserLookupResult;
+import com.tevore.domain.GithubUserHeader;
 import com.tevore.domain.GithubUserWithReposResponse;
+import com.tevore.error.ExceptionMessage;
+import com.tevore.error.GlobalExceptionHandler;
 import com.tevore.service.GithubService;
-import jakarta.validation.constraints.*;
+import com.tevore.service.SerializedResponseCache;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 
 @RestController
@@ -16,31 +49,208 @@ public class GithubController {
 
     private final GithubService githubService;
 
+    private final Validator validator;
+
+    private final GlobalExceptionHandler exceptionHandler;
+
+    private final SerializedResponseCache responseCache;
+
+    private final JsonMapper jsonMapper;
+
+    @Value("${github.cache.ttl:5m}")
+    private Duration ttl;
+
+    @Value("${github.request.deadline:10s}")
+    private Duration deadline;
+
     @Autowired
-    public GithubController(GithubService githubService) {
+    public GithubController(GithubService githubService,
+                            Validator validator,
+                            GlobalExceptionHandler exceptionHandler,
+                            SerializedResponseCache responseCache,
+                            JsonMapper jsonMapper) {
         this.githubService = githubService;
+        this.validator = validator;
+        this.exceptionHandler = exceptionHandler;
+        this.responseCache = responseCache;
+        this.jsonMapper = jsonMapper;
     }
 
 
     /**
-     * Github has some pretty good error handling now based on some fast
-     * sample tests, but we should play the defensive game as well
+     * Usernames are sanitized with Github's own rules, see GithubUsername
      * --
-     * We will use their basic requirements to sanitize input:
-     * Characters: May only contain alphanumeric characters (letters A-Z, numbers 0-9) or single hyphens (-).
-     * Hyphen Usage:
+     * The Age header tells the caller how many seconds ago Github last confirmed the data,
+     * since cached and stale responses can be served while Github is refreshed or failing.
      * --
-     *     Cannot begin or end with a hyphen.
-     *     Cannot contain multiple consecutive hyphens (e.g., user--name is invalid).
+     * The ETag is taken from the pre-serialized JSON ( see SerializedResponseCache ), so a
+     * matching If-None-Match gets a 304 without any body being written.
+     * Cache-Control max-age is always github.cache.ttl; caches subtract the Age sent with it, so
+     * clients and intermediaries keep the response for exactly what is left of our own TTL.
+     * Age is only sent when we know when Github last confirmed the data.
      * --
-     * Length: Must be a maximum of 39 characters long.
+     * The response is a future, so no request thread waits on Github. When it hasn't
+     * completed within github.request.deadline the calls still running for it are
+     * cancelled and the caller gets a 504.
      */
     @GetMapping(value = "/user/{username}")
-    public GithubUserWithReposResponse retrieveGithubUser(
+    public CompletableFuture<ResponseEntity<GithubUserWithReposResponse>> retrieveGithubUser(
             @PathVariable("username")
-            @Pattern(regexp = "^[a-zA-Z0-9]+(?:-[a-zA-Z0-9]+)*$", message = "Usernames can only contain alphanumerics and single hyphens")
-            @Size(min = 1, max = 39, message = "Usernames are between 1 and 39 characters")
-            String username) {
-        return githubService.retrieveGithubUserAndRepoInfo(username);
+            @GithubUsername
+            String username,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+            String ifNoneMatch) {
+        return githubService.retrieveGithubUserAndRepoInfoAsync(username)
+                .orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(response -> toResponseEntity(username, response, ifNoneMatch));
+    }
+
+    private ResponseEntity<GithubUserWithReposResponse> toResponseEntity(String username,
+                                                                         GithubUserWithReposResponse response,
+                                                                         String ifNoneMatch) {
+        String etag = responseCache.serialize(response).etag();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.setCacheControl(CacheControl.maxAge(ttl).cachePublic());
+        githubService.responseAge(username)
+                .ifPresent(age -> headers.set(HttpHeaders.AGE, String.valueOf(age.toSeconds())));
+
+        if (matchesAny(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+        return ResponseEntity.ok().headers(headers).body(response);
+    }
+
+    /**
+     * Opt-in streaming representation, selected with Accept: application/x-ndjson.
+     * The first line is the user ( GithubUserHeader ), then one line per repo, written
+     * as the repos come out of the cache or arrive page by page from Github. Neither
+     * time to first byte nor the response buffer grows with the number of repos.
+     * --
+     * The username is checked and the user fetched before anything is written, so those
+     * failures get their usual status. They are written as plain JSON since the error
+     * body is not NDJSON. Once streaming has started the status can't change any more,
+     * so a failure there ends the stream with an ExceptionMessage line.
+     */
+    @GetMapping(value = "/user/{username}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamGithubUser(@PathVariable("username") String username) {
+        List<String> violations = validator.validate(new Username(username)).stream()
+                .map(ConstraintViolation::getMessage)
+                .toList();
+        if (!violations.isEmpty()) {
+            return jsonError(new ResponseEntity<>(new ExceptionMessage(violations), HttpStatus.BAD_REQUEST));
+        }
+
+        GithubUserHeader header;
+        try {
+            header = githubService.retrieveGithubUserHeader(username);
+        } catch (RuntimeException ex) {
+            return jsonError(exceptionHandler.toErrorResponse(ex));
+        }
+
+        StreamingResponseBody body = out -> {
+            NdjsonWriter writer = new NdjsonWriter(out, jsonMapper);
+            writer.write(header);
+            writer.flush();
+            try {
+                githubService.streamGithubRepos(username, writer::writeAll);
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            } catch (RuntimeException ex) {
+                writer.write(exceptionHandler.toErrorResponse(ex).getBody());
+                writer.flush();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> jsonError(ResponseEntity<ExceptionMessage> error) {
+        byte[] json = jsonMapper.writeValueAsBytes(error.getBody());
+        return ResponseEntity.status(error.getStatusCode())
+                .headers(error.getHeaders())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> out.write(json));
+    }
+
+    /**
+     * Looks up to BatchUserLookupRequest.MAX_USERNAMES usernames in one call.
+     * Github usernames are case-insensitive, so duplicates are dropped ignoring case
+     * and the first spelling given is the one reported back.
+     * --
+     * Each username is validated with the same rules as the single user endpoint, but
+     * an invalid or missing username only fails its own result, never the whole batch.
+     * --
+     * Like the single user endpoint the response is a future held to github.request.deadline:
+     * a username still being looked up by then has its calls cancelled and gets a 504 result.
+     */
+    @PostMapping(value = "/users:batch")
+    public CompletableFuture<BatchUserLookupResponse> retrieveGithubUsers(@Valid @RequestBody BatchUserLookupRequest request) {
+        Map<String, String> uniqueUsernames = new LinkedHashMap<>();
+        for (String username : request.usernames()) {
+            if (username != null) {
+                uniqueUsernames.putIfAbsent(username.toLowerCase(Locale.ROOT), username);
+            }
+        }
+
+        Map<String, List<String>> invalidUsernames = new LinkedHashMap<>();
+        List<String> validUsernames = new ArrayList<>();
+        for (String username : uniqueUsernames.values()) {
+            List<String> violations = validator.validate(new Username(username)).stream()
+                    .map(ConstraintViolation::getMessage)
+                    .toList();
+            if (violations.isEmpty()) {
+                validUsernames.add(username);
+            } else {
+                invalidUsernames.put(username, violations);
+            }
+        }
+
+        Map<String, CompletableFuture<GithubUserWithReposResponse>> lookups =
+                githubService.retrieveGithubUsersAndRepoInfo(validUsernames);
+        lookups.values().forEach(lookup -> lookup.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS));
+
+        return CompletableFuture.allOf(lookups.values().toArray(CompletableFuture[]::new))
+                .handle((done, ex) -> {
+                    List<BatchUserLookupResult> results = new ArrayList<>(uniqueUsernames.size());
+                    for (String username : uniqueUsernames.values()) {
+                        List<String> violations = invalidUsernames.get(username);
+                        results.add(violations != null
+                                ? BatchUserLookupResult.failed(username, 400, violations)
+                                : toResult(username, lookups.get(username)));
+                    }
+                    return new BatchUserLookupResponse(results);
+                });
+    }
+
+    private BatchUserLookupResult toResult(String username,
+                                           CompletableFuture<GithubUserWithReposResponse> lookup) {
+        try {
+            return BatchUserLookupResult.found(username, lookup.join());
+        } catch (CompletionException | CancellationException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            ResponseEntity<ExceptionMessage> error = exceptionHandler.toErrorResponse(cause);
+            return BatchUserLookupResult.failed(
+                    username,
+                    error.getStatusCode().value(),
+                    error.getBody().errorMessages()
+            );
+        }
+    }
+
+    // If-None-Match uses the weak comparison, and * matches any current representation
+    private static boolean matchesAny(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+        ETag current = ETag.create(etag);
+        for (ETag candidate : ETag.parse(ifNoneMatch)) {
+            if (candidate.isWildcard() || candidate.compare(current, false)) return true;
+        }
+        return false;
+    }
+
+    // Lets batch usernames be validated against the same constraint as the path variable
+    record Username(@GithubUsername String value) {
     }
 }
@@ -0,0 +1,42 @@
+package com.tevore.controller;
+
+import jakarta.validation.Constraint;
+import jakarta.validation.Payload;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Github has some pretty good error handling now based on some fast
+ * sample tests, but we should play the defensive game as well
+ * --
+ * We will use their basic requirements to sanitize input:
+ * Characters: May only contain alphanumeric characters (letters A-Z, numbers 0-9) or single hyphens (-).
+ * Hyphen Usage:
+ * --
+ *     Cannot begin or end with a hyphen.
+ *     Cannot contain multiple consecutive hyphens (e.g., user--name is invalid).
+ * --
+ * Length: Must be a maximum of 39 characters long.
+ * --
+ * Each rule reports its own message, so callers see exactly which rule was broken.
+ */
+@Pattern(regexp = "^[a-zA-Z0-9]+(?:-[a-zA-Z0-9]+)*$", message = "Usernames can only contain alphanumerics and single hyphens")
+@Size(min = 1, max = 39, message = "Usernames are between 1 and 39 characters")
+@Constraint(validatedBy = {})
+@Target({ElementType.PARAMETER, ElementType.FIELD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface GithubUsername {
+
+    String message() default "Invalid Github username";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+}
@@ -0,0 +1,54 @@
+package com.tevore.controller;
+
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Writes one JSON document per line, flushing every FLUSH_EVERY lines so the client
+ * sees data as it is produced and nothing piles up in the response buffer
+ */
+final class NdjsonWriter {
+
+    private static final int FLUSH_EVERY = 100;
+
+    private final OutputStream out;
+
+    private final JsonMapper jsonMapper;
+
+    private int unflushed;
+
+    NdjsonWriter(OutputStream out, JsonMapper jsonMapper) {
+        this.out = out;
+        this.jsonMapper = jsonMapper;
+    }
+
+    void write(Object line) throws IOException {
+        out.write(jsonMapper.writeValueAsBytes(line));
+        out.write('\n');
+        if (++unflushed >= FLUSH_EVERY) flush();
+    }
+
+    /**
+     * For callbacks that can't throw IOException, a failed write ( usually the client
+     * going away ) is rethrown unchecked so whatever is producing the lines stops
+     */
+    void writeAll(List<?> lines) {
+        try {
+            for (Object line : lines) {
+                write(line);
+            }
+            flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    void flush() throws IOException {
+        out.flush();
+        unflushed = 0;
+    }
+}
@@ -0,0 +1,57 @@
+package com.tevore.controller;
+
+import com.tevore.domain.GithubUserWithReposResponse;
+import com.tevore.service.SerializedResponse;
+import com.tevore.service.SerializedResponseCache;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Writes GithubUserWithReposResponse bodies from the bytes kept in the SerializedResponseCache
+ * straight to the output stream. Picked up ahead of the Jackson converter since it is a bean.
+ * Responses nested in other bodies ( batch lookups ) are still written by Jackson.
+ */
+@Component
+public class SerializedResponseConverter extends AbstractHttpMessageConverter<GithubUserWithReposResponse> {
+
+    private final SerializedResponseCache responseCache;
+
+    public SerializedResponseConverter(SerializedResponseCache responseCache) {
+        super(MediaType.APPLICATION_JSON);
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return GithubUserWithReposResponse.class == clazz;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected GithubUserWithReposResponse readInternal(Class<? extends GithubUserWithReposResponse> clazz,
+                                                       HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("GithubUserWithReposResponse is write only", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(GithubUserWithReposResponse response, MediaType contentType) {
+        return (long) responseCache.serialize(response).length();
+    }
+
+    @Override
+    protected void writeInternal(GithubUserWithReposResponse response,
+                                 HttpOutputMessage outputMessage) throws IOException {
+        SerializedResponse serialized = responseCache.serialize(response);
+        outputMessage.getBody().write(serialized.json());
+    }
+}
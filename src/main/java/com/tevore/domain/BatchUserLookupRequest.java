@@ -0,0 +1,14 @@
+package com.tevore.domain;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record BatchUserLookupRequest(
+        @NotEmpty(message = "At least one username is required")
+        @Size(max = BatchUserLookupRequest.MAX_USERNAMES, message = "A batch can contain at most {max} usernames")
+        List<String> usernames
+) {
+    public static final int MAX_USERNAMES = 100;
+}
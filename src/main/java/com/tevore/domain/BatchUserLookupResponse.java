@@ -0,0 +1,6 @@
+package com.tevore.domain;
+
+import java.util.List;
+
+public record BatchUserLookupResponse(List<BatchUserLookupResult> results) {
+}
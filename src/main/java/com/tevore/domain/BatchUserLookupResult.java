@@ -0,0 +1,27 @@
+package com.tevore.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * The outcome for a single username of a batch lookup. Exactly one of
+ * user and errorMessages is set, and status is the HTTP status the single
+ * user endpoint would have answered with.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchUserLookupResult(
+        String username,
+        int status,
+        GithubUserWithReposResponse user,
+        List<String> errorMessages
+) {
+
+    public static BatchUserLookupResult found(String username, GithubUserWithReposResponse user) {
+        return new BatchUserLookupResult(username, 200, user, null);
+    }
+
+    public static BatchUserLookupResult failed(String username, int status, List<String> errorMessages) {
+        return new BatchUserLookupResult(username, status, null, errorMessages);
+    }
+}
@@ -0,0 +1,120 @@
+package com.tevore.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of repos packed for keeping in a cache. As GithubRepos every repo costs a
+ * record and two Strings, and the url is almost all the same https://api.github.com/repos/{owner}/
+ * prefix over and over. Here the names are UTF-8 bytes back to back in a single array,
+ * the prefix is kept once and a url is only stored for a repo whose url is not prefix + name.
+ * A few hundred bytes per repo come down to about the length of its name plus 4.
+ * --
+ * get() decodes a GithubRepo on every call, so iterate once rather than calling get
+ * repeatedly for the same index on a hot path.
+ */
+public final class CompactRepoList extends AbstractList<GithubRepo> implements RandomAccess {
+
+    private static final CompactRepoList EMPTY = new CompactRepoList(null, new byte[0], new int[0], null);
+
+    private final String urlPrefix;
+    private final byte[] names;
+    // ends[i] is where the name of repo i stops in names, it starts where repo i - 1 stopped
+    private final int[] ends;
+    // null when every url is urlPrefix + name, otherwise the url of the repos that differ
+    private final String[] urls;
+
+    private CompactRepoList(String urlPrefix, byte[] names, int[] ends, String[] urls) {
+        this.urlPrefix = urlPrefix;
+        this.names = names;
+        this.ends = ends;
+        this.urls = urls;
+    }
+
+    /**
+     * The compact form of repos, or repos itself when it already is one or has a repo
+     * without a name or url, which the encoding can't tell apart from an empty one
+     */
+    public static List<GithubRepo> of(List<GithubRepo> repos) {
+        if (repos instanceof CompactRepoList) return repos;
+        if (repos.isEmpty()) return EMPTY;
+
+        for (GithubRepo repo : repos) {
+            if (repo == null || repo.name() == null || repo.url() == null) return repos;
+        }
+
+        GithubRepo first = repos.get(0);
+        String urlPrefix = first.url().endsWith(first.name())
+                ? first.url().substring(0, first.url().length() - first.name().length())
+                : null;
+
+        byte[][] encoded = new byte[repos.size()][];
+        int[] ends = new int[repos.size()];
+        String[] urls = null;
+        int length = 0;
+        for (int i = 0; i < repos.size(); i++) {
+            GithubRepo repo = repos.get(i);
+            encoded[i] = repo.name().getBytes(StandardCharsets.UTF_8);
+            length += encoded[i].length;
+            ends[i] = length;
+            if (urlPrefix == null || !isPrefixed(repo.url(), urlPrefix, repo.name())) {
+                if (urls == null) urls = new String[repos.size()];
+                urls[i] = repo.url();
+            }
+        }
+
+        byte[] names = new byte[length];
+        int start = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            System.arraycopy(encoded[i], 0, names, start, encoded[i].length);
+            start = ends[i];
+        }
+        return new CompactRepoList(urlPrefix, names, ends, urls);
+    }
+
+    @Override
+    public GithubRepo get(int index) {
+        int start = index == 0 ? 0 : ends[index - 1];
+        String name = new String(names, start, ends[index] - start, StandardCharsets.UTF_8);
+        String url = urls != null && urls[index] != null ? urls[index] : urlPrefix + name;
+        return new GithubRepo(name, url);
+    }
+
+    @Override
+    public int size() {
+        return ends.length;
+    }
+
+    /**
+     * Heap kept by this list, estimated the same way as RetainedSizeWeigher
+     * ( compressed oops, 8 byte alignment )
+     */
+    public long retainedBytes() {
+        long bytes = align(12 + 4 * 4) + align(16 + names.length) + align(16 + 4L * ends.length);
+        if (urlPrefix != null) bytes += stringBytes(urlPrefix);
+        if (urls != null) {
+            bytes += align(16 + 4L * urls.length);
+            for (String url : urls) {
+                if (url != null) bytes += stringBytes(url);
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean isPrefixed(String url, String prefix, String name) {
+        return url.length() == prefix.length() + name.length()
+                && url.startsWith(prefix)
+                && url.endsWith(name);
+    }
+
+    private static long stringBytes(String text) {
+        // Counted as Latin-1, which Github's urls are
+        return 24 + align(16 + (long) text.length());
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,17 @@
+package com.tevore.domain;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * First line of the NDJSON representation of a user: everything in
+ * GithubUserWithReposResponse except the repos, which follow one per line
+ */
+public record GithubUserHeader(
+        String login,
+        @JsonProperty("avatar_url") String avatarUrl,
+        String url,
+        String name,
+        String location,
+        String email,
+        @JsonProperty("created_at") String createdAt
+) {}
@@ -1,8 +1,13 @@
 package com.tevore.error;
 
+import com.tevore.service.GithubRateLimitedException;
+import com.tevore.service.GithubUnavailableException;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -12,6 +17,8 @@ import org.springframework.web.servlet.resource.NoResourceFoundException;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 
 @ControllerAdvice
@@ -49,6 +56,58 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(new ExceptionMessage(errorList), HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(MethodArgumentNotValidException.class)
+    public ResponseEntity<ExceptionMessage> handleMethodArgumentNotValidException(MethodArgumentNotValidException ex) {
+        List<String> errorList = new ArrayList<>();
+        ex.getBindingResult().getAllErrors().forEach(error -> errorList.add(error.getDefaultMessage()));
+        return new ResponseEntity<>(new ExceptionMessage(errorList), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<ExceptionMessage> handleHttpMessageNotReadableException(HttpMessageNotReadableException ex) {
+        List<String> errorList = new ArrayList<>();
+        errorList.add("Request body is missing or malformed");
+        return new ResponseEntity<>(new ExceptionMessage(errorList), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(GithubRateLimitedException.class)
+    public ResponseEntity<ExceptionMessage> handleGithubRateLimitedException(GithubRateLimitedException ex) {
+        // Our Github budget is spent, tell the caller when it is worth trying again
+        List<String> errorList = new ArrayList<>();
+        errorList.add("GitHub rate limit reached, try again later");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ex.getRetryAfter().toSeconds())))
+                .body(new ExceptionMessage(errorList));
+    }
+
+    @ExceptionHandler(GithubUnavailableException.class)
+    public ResponseEntity<ExceptionMessage> handleGithubUnavailableException(GithubUnavailableException ex) {
+        // Github is failing and we have nothing stale to answer with, don't keep the caller waiting
+        List<String> errorList = new ArrayList<>();
+        errorList.add("GitHub is unavailable, try again later");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ex.getRetryAfter().toSeconds())))
+                .body(new ExceptionMessage(errorList));
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<ExceptionMessage> handleRejectedExecutionException(RejectedExecutionException ex) {
+        // Every slot for upstream calls is taken and we have nothing stale to answer with, shed the request
+        List<String> errorList = new ArrayList<>();
+        errorList.add("Too many requests in progress, try again later");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ExceptionMessage(errorList));
+    }
+
+    @ExceptionHandler(TimeoutException.class)
+    public ResponseEntity<ExceptionMessage> handleTimeoutException(TimeoutException ex) {
+        // github.request.deadline passed before Github answered, the upstream work was cancelled
+        List<String> errorList = new ArrayList<>();
+        errorList.add("GitHub did not answer in time, try again later");
+        return new ResponseEntity<>(new ExceptionMessage(errorList), HttpStatus.GATEWAY_TIMEOUT);
+    }
+
     // Fallback handler for all other exceptions
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ExceptionMessage> handleGenericException(Exception ex) {
@@ -57,4 +116,19 @@ public class GlobalExceptionHandler {
         errorList.add("An unexpected error occurred");
         return new ResponseEntity<>(new ExceptionMessage(errorList), HttpStatus.INTERNAL_SERVER_ERROR); // Returns 500
     }
+
+    /**
+     * Maps an exception to the same error response the handlers above would produce,
+     * for places that report errors per item rather than failing the whole request ( batch lookups )
+     */
+    public ResponseEntity<ExceptionMessage> toErrorResponse(Throwable ex) {
+        if (ex instanceof HttpClientErrorException clientError) return handleHttpClientErrorException(clientError);
+        if (ex instanceof HttpServerErrorException serverError) return handleHttpServerErrorException(serverError);
+        if (ex instanceof GithubRateLimitedException rateLimited) return handleGithubRateLimitedException(rateLimited);
+        if (ex instanceof GithubUnavailableException unavailable) return handleGithubUnavailableException(unavailable);
+        if (ex instanceof RejectedExecutionException rejected) return handleRejectedExecutionException(rejected);
+        if (ex instanceof TimeoutException timeout) return handleTimeoutException(timeout);
+        if (ex instanceof Exception exception) return handleGenericException(exception);
+        return handleGenericException(new RuntimeException(ex));
+    }
 }
@@ -0,0 +1,193 @@
+package com.tevore.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retries the fetches in GithubClient and GithubGraphqlClient without blocking a thread.
+ * An attempt runs on the given executor; when it fails with a retryable exception the
+ * next attempt is handed back to that executor once the backoff has passed, from the
+ * JDK's shared delay scheduler ( CompletableFuture.delayedExecutor ). No thread sleeps
+ * through the backoff, the executor thread is free for other work in between.
+ * --
+ * By default a 429, an I/O error or a call the GithubRateLimiter did not admit is retried up to
+ * github.retry.max-attempts times, with an exponential randomised backoff, a 404 is never
+ * retried nor recovered. Where Github said how long to stay away ( Retry-After, the rate
+ * limit reset ) the next attempt waits at least that long, and when that is beyond
+ * github.rate-limit.max-wait the call is not retried at all. Any other failure, or the
+ * last one, goes to the caller's recover function, which answers with stale data where there
+ * is some or throws. So does an attempt the executor rejects because it is full, without being retried.
+ * Attempts and calls are counted as
+ *  github.retry.attempts   every failed attempt, tagged with the exception
+ *  github.retry.calls      every call, by outcome ( success or failure ) and whether it
+ *                          needed more than one attempt
+ */
+@Component
+public class AsyncRetrier {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(AsyncRetrier.class);
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${github.retry.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${github.retry.initial-delay:250ms}")
+    private Duration initialDelay;
+
+    @Value("${github.retry.multiplier:2.0}")
+    private double multiplier;
+
+    @Value("${github.retry.max-delay:3s}")
+    private Duration maxDelay;
+
+    @Value("${github.rate-limit.max-wait:2s}")
+    private Duration maxRateLimitWait;
+
+    public AsyncRetrier(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+    }
+
+    /**
+     * Runs call on executor until it succeeds or the policy gives up, then completes the
+     * returned future with its value, or with what recover returns or throws for the last failure
+     */
+    public <T> CompletableFuture<T> execute(String label,
+                                           Executor executor,
+                                           Supplier<T> call,
+                                           Function<RuntimeException, T> recover) {
+        return execute(label, executor, call, AsyncRetrier::isRetryable, recover);
+    }
+
+    /**
+     * execute, retrying the failures retryable accepts instead of the usual ones
+     */
+    public <T> CompletableFuture<T> execute(String label,
+                                           Executor executor,
+                                           Supplier<T> call,
+                                           Predicate<RuntimeException> retryable,
+                                           Function<RuntimeException, T> recover) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        submit(new Attempts<>(label, executor, call, retryable, recover, result), 1);
+        return result;
+    }
+
+    private <T> void submit(Attempts<T> attempts, int attempt) {
+        if (attempts.result().isDone()) return;
+        try {
+            attempts.executor().execute(() -> run(attempts, attempt));
+        } catch (RejectedExecutionException ex) {
+            // Every slot is busy: retrying would only add to the pile, but the caller still
+            // gets whatever the recover function has, stale data included
+            LOGGER.debug("Attempt {} of {} was not started, the executor is full", attempt, attempts.label());
+            giveUp(attempts, attempt, ex);
+        }
+    }
+
+    private <T> void run(Attempts<T> attempts, int attempt) {
+        // A caller that gave up cancelled the future, no point in calling Github for it
+        if (attempts.result().isDone()) return;
+
+        T value;
+        try {
+            value = attempts.call().get();
+        } catch (RuntimeException ex) {
+            failed(attempts, attempt, ex);
+            return;
+        }
+        countCall(attempts.label(), "success", attempt > 1);
+        attempts.result().complete(value);
+    }
+
+    private <T> void failed(Attempts<T> attempts, int attempt, RuntimeException ex) {
+        meterRegistry.counter("github.retry.attempts",
+                "call", attempts.label(),
+                "exception", ex.getClass().getSimpleName()).increment();
+
+        long upstreamWait = upstreamWaitMillis(ex);
+        if (attempts.retryable().test(ex) && attempt < maxAttempts && upstreamWait <= maxRateLimitWait.toMillis()) {
+            long delay = Math.max(backoffMillis(attempt), upstreamWait);
+            LOGGER.debug("Attempt {} of {} failed with {}, retrying in {}ms",
+                    attempt, attempts.label(), ex.getClass().getSimpleName(), delay);
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                    .execute(() -> submit(attempts, attempt + 1));
+            return;
+        }
+
+        giveUp(attempts, attempt, ex);
+    }
+
+    private <T> void giveUp(Attempts<T> attempts, int attempt, RuntimeException ex) {
+        countCall(attempts.label(), "failure", attempt > 1);
+        if (ex instanceof HttpClientErrorException.NotFound) {
+            attempts.result().completeExceptionally(ex);
+            return;
+        }
+        try {
+            attempts.result().complete(attempts.recover().apply(ex));
+        } catch (RuntimeException unrecovered) {
+            attempts.result().completeExceptionally(unrecovered);
+        }
+    }
+
+    /**
+     * delay * multiplier^(attempt - 1) capped at max-delay, then spread randomly up to
+     * another multiplier - 1 times that ( like @Backoff(random = true) ) so callers failing
+     * together don't all come back at the same moment
+     */
+    long backoffMillis(int attempt) {
+        double base = Math.min(initialDelay.toMillis() * Math.pow(multiplier, attempt - 1), maxDelay.toMillis());
+        double spread = base * (multiplier - 1) * ThreadLocalRandom.current().nextDouble();
+        return (long) Math.min(base + spread, maxDelay.toMillis());
+    }
+
+    static boolean isRetryable(RuntimeException ex) {
+        return ex instanceof HttpClientErrorException.TooManyRequests
+                || ex instanceof GithubRateLimitedException
+                || ex instanceof ResourceAccessException;
+    }
+
+    /**
+     * How long Github asked us to stay away before the next attempt, 0 when it didn't say
+     */
+    private static long upstreamWaitMillis(RuntimeException ex) {
+        return switch (ex) {
+            case GithubRateLimitedException rateLimited -> rateLimited.getRetryAfter().toMillis();
+            case HttpClientErrorException.TooManyRequests tooMany ->
+                    GithubRateLimiter.waitMillis(tooMany.getResponseHeaders(), System.currentTimeMillis());
+            default -> 0;
+        };
+    }
+
+    private void countCall(String label, String outcome, boolean retried) {
+        meterRegistry.counter("github.retry.calls",
+                "call", label,
+                "outcome", outcome,
+                "retried", Boolean.toString(retried)).increment();
+    }
+
+    private record Attempts<T>(String label,
+                               Executor executor,
+                               Supplier<T> call,
+                               Predicate<RuntimeException> retryable,
+                               Function<RuntimeException, T> recover,
+                               CompletableFuture<T> result) {
+    }
+}
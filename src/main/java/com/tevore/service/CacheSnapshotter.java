@@ -0,0 +1,387 @@
+package com.tevore.service;
+
+import com.github.benmanes.caffeine.cache.Policy;
+import com.tevore.configuration.CacheEntryCodec;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the githubUsers / githubUserRepos caches and the RevalidationStore to
+ * github.cache.snapshot.path every github.cache.snapshot.interval and on shutdown, and reads
+ * them back on startup, so a restart doesn't begin with cold caches that spend the rate limit
+ * refilling themselves. Disabled while the path is empty.
+ * --
+ * The file is binary: cache entries in CacheEntryCodec form with the wall clock time they
+ * expire at, so time spent down counts against them and expired ones are skipped, then the
+ * last Github responses with their ETag / Last-Modified and the time Github confirmed them,
+ * so the first call for a user after the restart can still be a 304. It is read through a
+ * memory mapping, in a lifecycle phase before the web server starts, so the app only takes
+ * traffic and reports ready once the caches are warm. How long that took is the
+ * cache.snapshot.restore timer.
+ * --
+ * Refresh-ahead counts from the restore, only the expiry is kept exactly. Entries in the
+ * off-heap tier are not written, they are the ones least likely to be read again.
+ * A snapshot is written to a temporary file and moved over the old one, so a crash while
+ * writing leaves the previous snapshot in place.
+ */
+@Component
+public class CacheSnapshotter implements SmartLifecycle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshotter.class);
+
+    private static final int MAGIC = 0x47484353; // GHCS
+    // 2: keys are lower case, a version 1 snapshot holds keys that lookups no longer hit
+    private static final int VERSION = 2;
+    private static final long NO_EXPIRY = -1;
+
+    // Boot starts the web server at DEFAULT_PHASE - 2048, so this runs before it starts
+    // and stops after it has drained
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private static final List<String> CACHES = List.of(GithubCacheInspector.USERS_CACHE, GithubCacheInspector.REPOS_CACHE);
+
+    private final CacheManager cacheManager;
+
+    private final RevalidationStore revalidationStore;
+
+    private final Path path;
+
+    private final Duration interval;
+
+    private final Timer restoreTimer;
+
+    private final Timer writeTimer;
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile boolean running;
+
+    public CacheSnapshotter(CacheManager cacheManager,
+                            RevalidationStore revalidationStore,
+                            @Value("${github.cache.snapshot.path:}") String path,
+                            @Value("${github.cache.snapshot.interval:5m}") Duration interval,
+                            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.cacheManager = cacheManager;
+        this.revalidationStore = revalidationStore;
+        this.path = path.isBlank() ? null : Path.of(path);
+        this.interval = interval;
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.restoreTimer = Timer.builder("cache.snapshot.restore")
+                .description("Time from reading the cache snapshot on startup to warm caches")
+                .register(registry);
+        this.writeTimer = Timer.builder("cache.snapshot.write")
+                .description("Time taken to write a cache snapshot")
+                .register(registry);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (path == null) return;
+
+        restore();
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("cache-snapshot")
+                .daemon(true)
+                .factory());
+        scheduler.scheduleWithFixedDelay(this::writeQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (path == null) return;
+
+        // Let a scheduled write in progress finish rather than interrupt it halfway through the file
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        writeQuietly();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * Reads the snapshot into the caches, returning how many entries were restored.
+     * A missing file restores nothing; an unreadable one is logged and restores what
+     * could be read before the damage.
+     */
+    public int restore() {
+        if (path == null || !Files.isRegularFile(path)) return 0;
+
+        long started = System.nanoTime();
+        int restored = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                LOGGER.warn("Ignoring cache snapshot {} written by another version", path);
+                return 0;
+            }
+            Instant writtenAt = Instant.ofEpochMilli(in.getLong());
+            long now = System.currentTimeMillis();
+
+            for (int caches = in.getInt(); caches > 0; caches--) {
+                Cache cache = cacheManager.getCache(readString(in));
+                for (int entries = in.getInt(); entries > 0; entries--) {
+                    String key = readString(in);
+                    long expiresAt = in.getLong();
+                    byte[] value = readBytes(in);
+                    if (cache != null && (expiresAt == NO_EXPIRY || expiresAt > now)) {
+                        put(cache, key, CacheEntryCodec.decode(value),
+                                expiresAt == NO_EXPIRY ? null : Duration.ofMillis(expiresAt - now));
+                        restored++;
+                    }
+                }
+            }
+
+            // A response without a body is skipped, a user's repos only with all of their pages
+            for (int users = in.getInt(); users > 0; users--) {
+                String key = readString(in);
+                ValidatedResponse<GithubUser> user = readValidated(in, GithubUser.class);
+                if (user != null) {
+                    revalidationStore.storeUser(key, user);
+                    restored++;
+                }
+            }
+            for (int repos = in.getInt(); repos > 0; repos--) {
+                String key = readString(in);
+                int pageCount = in.getInt();
+                List<ValidatedResponse<List<GithubRepo>>> pages = new ArrayList<>(pageCount);
+                for (int page = 0; page < pageCount; page++) {
+                    pages.add(readValidated(in, List.class));
+                }
+                if (!pages.contains(null)) {
+                    revalidationStore.storeRepos(key, new RepoPages(pages));
+                    restored++;
+                }
+            }
+
+            Duration took = Duration.ofNanos(System.nanoTime() - started);
+            restoreTimer.record(took);
+            LOGGER.info("Restored {} cache entries from snapshot {} written {}s ago in {}ms",
+                    restored, path, Duration.between(writtenAt, Instant.now()).toSeconds(), took.toMillis());
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Could not read cache snapshot {}, restored {} entries before failing", path, restored, ex);
+        }
+        return restored;
+    }
+
+    /**
+     * Writes a snapshot of the caches as they are now
+     */
+    public void write() throws IOException {
+        if (path == null) return;
+
+        long started = System.nanoTime();
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            out.writeInt(CACHES.size());
+            for (String name : CACHES) {
+                writeString(out, name);
+                writeCache(out, cacheManager.getCache(name));
+            }
+
+            // Bodies are encoded before anything is written, a response whose body CacheEntryCodec
+            // can't encode is left out, and a user's repos are left out unless every page encodes
+            Map<String, EncodedResponse> users = new LinkedHashMap<>();
+            revalidationStore.allUsers().forEach((key, user) -> {
+                EncodedResponse encoded = EncodedResponse.of(user);
+                if (encoded != null) users.put(key, encoded);
+            });
+            out.writeInt(users.size());
+            for (Map.Entry<String, EncodedResponse> user : users.entrySet()) {
+                writeString(out, user.getKey());
+                writeValidated(out, user.getValue());
+            }
+
+            Map<String, List<EncodedResponse>> repos = new LinkedHashMap<>();
+            revalidationStore.allRepos().forEach((key, userRepos) -> {
+                List<EncodedResponse> pages = new ArrayList<>(userRepos.pages().size());
+                for (ValidatedResponse<List<GithubRepo>> page : userRepos.pages()) {
+                    EncodedResponse encoded = EncodedResponse.of(page);
+                    if (encoded == null) return;
+                    pages.add(encoded);
+                }
+                repos.put(key, pages);
+            });
+            out.writeInt(repos.size());
+            for (Map.Entry<String, List<EncodedResponse>> userRepos : repos.entrySet()) {
+                writeString(out, userRepos.getKey());
+                out.writeInt(userRepos.getValue().size());
+                for (EncodedResponse page : userRepos.getValue()) {
+                    writeValidated(out, page);
+                }
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writeTimer.record(Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Could not write cache snapshot {}", path, ex);
+        }
+    }
+
+    // Entries are collected first, the cache can change while it is written out
+    @SuppressWarnings("unchecked")
+    private static void writeCache(DataOutputStream out, Cache cache) throws IOException {
+        if (cache == null || !(cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache)) {
+            out.writeInt(0);
+            return;
+        }
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> caffeine = (com.github.benmanes.caffeine.cache.Cache<Object, Object>) nativeCache;
+        Policy.VarExpiration<Object, Object> expiry = caffeine.policy().expireVariably().orElse(null);
+        long now = System.currentTimeMillis();
+
+        List<Entry> entries = new ArrayList<>();
+        caffeine.asMap().forEach((key, value) -> {
+            byte[] encoded = key instanceof String ? CacheEntryCodec.encode(value, false) : null;
+            if (encoded == null) return;
+            OptionalLong remaining = expiry == null ? OptionalLong.empty() : expiry.getExpiresAfter(key, TimeUnit.MILLISECONDS);
+            entries.add(new Entry((String) key, remaining.isPresent() ? now + remaining.getAsLong() : NO_EXPIRY, encoded));
+        });
+
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            writeString(out, entry.key());
+            out.writeLong(entry.expiresAt());
+            writeBytes(out, entry.value());
+        }
+    }
+
+    /**
+     * Puts value back with the lifetime it had left, which needs a variable expiry
+     * ( see CachingConfig ). Other caches get it with their usual lifetime.
+     */
+    @SuppressWarnings("unchecked")
+    private static void put(Cache cache, String key, Object value, Duration remaining) {
+        if (remaining != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache) {
+            Optional<Policy.VarExpiration<Object, Object>> expiry =
+                    ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) nativeCache).policy().expireVariably();
+            if (expiry.isPresent()) {
+                expiry.get().put(key, value, remaining.toMillis(), TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        cache.put(key, value);
+    }
+
+    private static void writeValidated(DataOutputStream out, EncodedResponse response) throws IOException {
+        writeString(out, response.etag());
+        writeString(out, response.lastModified());
+        out.writeLong(response.receivedAt());
+        writeBytes(out, response.body());
+    }
+
+    /**
+     * The response as written, or null for one written without a body
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> ValidatedResponse<T> readValidated(ByteBuffer in, Class<?> type) {
+        String etag = readString(in);
+        String lastModified = readString(in);
+        Instant receivedAt = Instant.ofEpochMilli(in.getLong());
+        byte[] encoded = readBytes(in);
+        if (encoded == null) return null;
+        Object body = CacheEntryCodec.decode(encoded);
+        if (!type.isInstance(body)) {
+            throw new IllegalStateException("Expected a " + type.getSimpleName() + " in the snapshot");
+        }
+        return new ValidatedResponse<>((T) body, etag, lastModified, receivedAt);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        if (length > in.remaining()) throw new IllegalStateException("Cache snapshot is truncated");
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private record Entry(String key, long expiresAt, byte[] value) {
+    }
+
+    private record EncodedResponse(String etag, String lastModified, long receivedAt, byte[] body) {
+
+        // Null when CacheEntryCodec can't encode the body
+        static EncodedResponse of(ValidatedResponse<?> response) {
+            byte[] body = CacheEntryCodec.encode(response.body(), false);
+            return body == null
+                    ? null
+                    : new EncodedResponse(response.etag(), response.lastModified(), response.receivedAt().toEpochMilli(), body);
+        }
+    }
+}
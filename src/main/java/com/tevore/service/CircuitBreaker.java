@@ -0,0 +1,141 @@
+package com.tevore.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Count based circuit breaker over the outcomes of the last `window` calls
+ * --
+ *  CLOSED     calls go through. Once at least minimumCalls are recorded, the circuit opens when
+ *             failureRateThreshold % of them failed or slowCallRateThreshold % took longer than
+ *             slowCallDuration
+ *  OPEN       calls are refused for openDuration
+ *  HALF_OPEN  up to halfOpenCalls probes go through. The circuit closes when they all succeed
+ *             in time, and opens again as soon as one fails or is slow
+ * --
+ * Times are passed in by the caller so the logic can be tested without waiting.
+ */
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public record Settings(int window,
+                           int minimumCalls,
+                           int failureRateThreshold,
+                           Duration slowCallDuration,
+                           int slowCallRateThreshold,
+                           Duration openDuration,
+                           int halfOpenCalls) {
+    }
+
+    private final Settings settings;
+    private final long slowCallNanos;
+
+    // Ring buffer of the last `window` outcomes
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openUntilMillis;
+    private int probesInFlight;
+    private int probesSucceeded;
+
+    public CircuitBreaker(Settings settings) {
+        this.settings = settings;
+        this.slowCallNanos = settings.slowCallDuration().toNanos();
+        this.failed = new boolean[settings.window()];
+        this.slow = new boolean[settings.window()];
+    }
+
+    /**
+     * @return 0 when the call may go ahead, otherwise how long until the next probe is let through.
+     * Every admitted call must be followed by onResult or onCancelled.
+     */
+    public synchronized long tryAcquire(long nowMillis) {
+        if (state == State.OPEN) {
+            if (nowMillis < openUntilMillis) return openUntilMillis - nowMillis;
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight + probesSucceeded >= settings.halfOpenCalls()) return 1;
+            probesInFlight++;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the state the circuit moved to, or null when it did not change
+     */
+    public synchronized State onResult(boolean failure, long durationNanos, long nowMillis) {
+        boolean tooSlow = durationNanos > slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+            if (failure || tooSlow) return open(nowMillis);
+            if (++probesSucceeded >= settings.halfOpenCalls()) return close();
+            return null;
+        }
+        if (state == State.OPEN) return null; // a call admitted before the circuit opened
+
+        record(failure, tooSlow);
+        if (recorded >= settings.minimumCalls()
+                && (failures * 100 >= settings.failureRateThreshold() * recorded
+                || slowCalls * 100 >= settings.slowCallRateThreshold() * recorded)) {
+            return open(nowMillis);
+        }
+        return null;
+    }
+
+    /**
+     * An admitted call that was never made
+     */
+    public synchronized void onCancelled() {
+        if (state == State.HALF_OPEN) probesInFlight = Math.max(0, probesInFlight - 1);
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized void reset() {
+        close();
+    }
+
+    private void record(boolean failure, boolean tooSlow) {
+        if (recorded == failed.length) {
+            if (failed[next]) failures--;
+            if (slow[next]) slowCalls--;
+        } else {
+            recorded++;
+        }
+        failed[next] = failure;
+        slow[next] = tooSlow;
+        if (failure) failures++;
+        if (tooSlow) slowCalls++;
+        next = (next + 1) % failed.length;
+    }
+
+    private State open(long nowMillis) {
+        state = State.OPEN;
+        openUntilMillis = nowMillis + settings.openDuration().toMillis();
+        return State.OPEN;
+    }
+
+    private State close() {
+        state = State.CLOSED;
+        Arrays.fill(failed, false);
+        Arrays.fill(slow, false);
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        probesInFlight = 0;
+        probesSucceeded = 0;
+        return State.CLOSED;
+    }
+}
@@ -0,0 +1,84 @@
+package com.tevore.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.tevore.configuration.OffHeapTieredCache;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read-only view of the githubUsers and githubUserRepos caches for callers that want to
+ * know what is cached without causing a load. Both are Caffeine AsyncCaches whose entries
+ * are futures, so only a completed load counts as cached: peeking at one still in flight
+ * through the synchronous view would block until it completes.
+ * An entry only found in the off-heap tier counts as cached and is moved back onto the heap.
+ * --
+ * Github usernames are case-insensitive, so both caches are keyed in lower case ( key ).
+ */
+@Component
+public class GithubCacheInspector {
+
+    static final String USERS_CACHE = "githubUsers";
+    static final String REPOS_CACHE = "githubUserRepos";
+
+    private final CacheManager cacheManager;
+
+    public GithubCacheInspector(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    public Optional<GithubUser> cachedUser(String username) {
+        return Optional.ofNullable((GithubUser) peek(USERS_CACHE, username));
+    }
+
+    @SuppressWarnings("unchecked")
+    public Optional<List<GithubRepo>> cachedRepos(String username) {
+        return Optional.ofNullable((List<GithubRepo>) peek(REPOS_CACHE, username));
+    }
+
+    /**
+     * The cache key for username, the same for every spelling of it
+     */
+    static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The Caffeine AsyncCache behind cacheName, for loads that share their future through it
+     */
+    @SuppressWarnings("unchecked")
+    <T> AsyncCache<String, T> asyncCache(String cacheName) {
+        if (cacheManager.getCache(cacheName) instanceof CaffeineCache caffeine) {
+            return (AsyncCache<String, T>) (AsyncCache<?, ?>) caffeine.getAsyncCache();
+        }
+        throw new IllegalStateException("Cache " + cacheName + " is not a Caffeine cache");
+    }
+
+    private Object peek(String cacheName, String username) {
+        if (username == null) return null;
+        String key = key(username);
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null) return null;
+
+        if (cache instanceof CaffeineCache caffeine) {
+            CompletableFuture<Object> loaded = caffeine.getAsyncCache().getIfPresent(key);
+            if (loaded != null && loaded.isDone() && !loaded.isCompletedExceptionally()) {
+                return loaded.join();
+            }
+            if (loaded == null && cache instanceof OffHeapTieredCache tiered) {
+                return tiered.promote(key);
+            }
+            return null;
+        }
+        Cache.ValueWrapper wrapper = cache.get(key);
+        return wrapper == null ? null : wrapper.get();
+    }
+}
@@ -1,24 +1,42 @@
 package com.tevore.service;
 
+import com.tevore.domain.CompactRepoList;
 import com.tevore.domain.GithubRepo;
 import com.tevore.domain.GithubUser;
+import com.tevore.service.GithubRateLimiter.Priority;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Recover;
-import org.springframework.retry.annotation.Retryable;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  *  This client manages the retry logic, caching and actual calls of the application
@@ -28,32 +46,126 @@ import java.util.List;
  *  Partial success is a possible option as one of the calls could fail.
  *  Due to the potential rate-limit constraint, getting and caching some
  *  data is better than wasting a successful call.
+ *  Expired entries are revalidated with Github and, while Github is failing, the last
+ *  known body is served instead within the stale-if-error window.
  */
 @Component
 public class GithubClient {
 
     private final Logger LOGGER = LoggerFactory.getLogger(GithubClient.class);
 
+    private static final Consumer<List<GithubRepo>> NO_PAGE_LISTENER = page -> {};
+
+    private static final Pattern LAST_PAGE =
+            Pattern.compile("<[^>]*[?&]page=(\\d+)[^>]*>\\s*;\\s*rel=\"last\"");
+
     private final RestClient restClient;
 
+    private final RevalidationStore revalidationStore;
+
+    private final Executor repoPageExecutor;
+
+    private final GithubRateLimiter rateLimiter;
+
+    private final NegativeCache negativeCache;
+
+    private final CacheManager cacheManager;
+
+    private final GithubClientMetrics metrics;
+
+    private final UpstreamGuards guards;
+
+    private final Executor asyncExecutor;
+
+    private final AsyncRetrier retrier;
+
+    private final GithubCacheInspector cacheInspector;
+
+    private final SingleFlight<GithubUser> userLoads;
+
+    private final SingleFlight<List<GithubRepo>> reposLoads;
+
     @Value("${github.users.url}")
     private String usersUrl;
 
     @Value("${github.repos.url}")
     private String userReposUrl;
 
-    public GithubClient(RestClient restClient) {
+    @Value("${github.cache.stale-if-error:1h}")
+    private Duration staleIfError;
+
+    @Value("${github.repos.per-page:100}")
+    private int perPage;
+
+    @Value("${github.repos.page-concurrency:4}")
+    private int pageConcurrency;
+
+    @Value("${github.repos.max-pages:100}")
+    private int maxPages;
+
+    public GithubClient(RestClient restClient,
+                        RevalidationStore revalidationStore,
+                        @Qualifier("repoPageExecutor") Executor repoPageExecutor,
+                        GithubRateLimiter rateLimiter,
+                        NegativeCache negativeCache,
+                        CacheManager cacheManager,
+                        GithubClientMetrics metrics,
+                        UpstreamGuards guards,
+                        @Qualifier("asyncExecutor") Executor asyncExecutor,
+                        AsyncRetrier retrier,
+                        GithubCacheInspector cacheInspector) {
         this.restClient = restClient;
+        this.revalidationStore = revalidationStore;
+        this.repoPageExecutor = repoPageExecutor;
+        this.rateLimiter = rateLimiter;
+        this.negativeCache = negativeCache;
+        this.cacheManager = cacheManager;
+        this.metrics = metrics;
+        this.guards = guards;
+        this.asyncExecutor = asyncExecutor;
+        this.retrier = retrier;
+        this.cacheInspector = cacheInspector;
+        this.userLoads = new SingleFlight<>(cacheInspector.asyncCache(GithubCacheInspector.USERS_CACHE));
+        this.reposLoads = new SingleFlight<>(cacheInspector.asyncCache(GithubCacheInspector.REPOS_CACHE));
     }
 
-    @Cacheable(cacheNames = "githubUsers", key = "#username", sync = true)
-    @Retryable(
-            retryFor = { HttpClientErrorException.TooManyRequests.class, ResourceAccessException.class },
-            notRecoverable = { HttpClientErrorException.NotFound.class },
-            maxAttempts = 4,
-            backoff = @Backoff(delay = 250, multiplier = 2.0, maxDelay = 3000, random = true)
-    )
+    /**
+     * fetchUserAsync for a caller that waits for the outcome, failures are thrown as they are
+     */
     public GithubUser fetchUser(String username) {
+        return await(fetchUserAsync(username));
+    }
+
+    /**
+     * The user without a thread waiting on it: a cached user is returned as a completed future,
+     * otherwise the load runs on the asyncExecutor and is retried by the AsyncRetrier. The
+     * outcome, recovered or not, is what the cache holds from then on; a failure, or a load
+     * every caller gave up on, is not cached. Concurrent misses share one load, see SingleFlight.
+     */
+    public CompletableFuture<GithubUser> fetchUserAsync(String username) {
+        if (username == null || username.isBlank()) {
+            return CompletableFuture.failedFuture(blankUsername());
+        }
+        Optional<GithubUser> cached = cacheInspector.cachedUser(username);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        return userLoads.load(GithubCacheInspector.key(username), () -> retrier.execute("fetchUser", asyncExecutor,
+                () -> loadUser(username, Priority.FOREGROUND),
+                ex -> recoverUser(ex, username)));
+    }
+
+    /**
+     * Single conditional call to the users endpoint with no caching or retry around it.
+     * The background refresh in CachingConfig calls this directly so it goes upstream
+     * instead of being answered by the very cache entry it is refreshing.
+     * It is admitted at background priority, so it never eats into the budget kept for callers.
+     */
+    public GithubUser refreshUser(String username) {
+        return loadUser(username, Priority.BACKGROUND);
+    }
+
+    private GithubUser loadUser(String username, Priority priority) {
         requireUsername(username);
 
         URI uri = UriComponentsBuilder.fromUriString(usersUrl)
@@ -61,38 +173,202 @@ public class GithubClient {
                 .encode()
                 .toUri();
 
-        return restClient.get()
-                .uri(uri)
-                .retrieve()
-                .onStatus(s -> s.value() == 429, (req, res) -> {
-                    throw HttpClientErrorException.create(
-                            HttpStatus.TOO_MANY_REQUESTS,
-                            "Rate limited by GitHub",
-                            res.getHeaders(),
-                            null,
-                            null
-                    );
-                })
-                .body(GithubUser.class);
+        ValidatedResponse<GithubUser> previous = revalidationStore.user(username);
+
+        ResponseEntity<GithubUser> response;
+        try {
+            response = guards.call(GithubClientMetrics.USER,
+                    () -> rateLimiter.acquire(GithubRateLimiter.CORE, priority),
+                    () -> metrics.time(GithubClientMetrics.USER, priority, () -> restClient.get()
+                    .uri(uri)
+                    .headers(headers -> {
+                        if (previous != null) previous.applyTo(headers);
+                    })
+                    .retrieve()
+                    .onStatus(s -> s.value() == 429, (req, res) -> {
+                        throw HttpClientErrorException.create(
+                                HttpStatus.TOO_MANY_REQUESTS,
+                                "Rate limited by GitHub",
+                                res.getHeaders(),
+                                null,
+                                null
+                        );
+                    })
+                    .toEntity(GithubUser.class)));
+        } catch (HttpClientErrorException.NotFound ex) {
+            negativeCache.markMissing(username);
+            throw ex;
+        }
+
+        if (previous != null && isNotModified(response)) {
+            LOGGER.debug("User unchanged upstream, reusing cached body for user={}", username);
+            revalidationStore.storeUser(username, previous.revalidated());
+            return previous.body();
+        }
+
+        revalidationStore.storeUser(username, ValidatedResponse.of(response.getBody(), response.getHeaders()));
+        return response.getBody();
     }
 
-    @Cacheable(cacheNames = "githubUserRepos", key = "#username", sync = true)
-    @Retryable(
-            retryFor = { HttpClientErrorException.TooManyRequests.class, ResourceAccessException.class },
-            notRecoverable = { HttpClientErrorException.NotFound.class },
-            maxAttempts = 4,
-            backoff = @Backoff(delay = 250, multiplier = 2.0, maxDelay = 3000, random = true)
-    )
     public List<GithubRepo> fetchRepos(String username) {
+        return await(fetchReposAsync(username));
+    }
+
+    /**
+     * The repos without a thread waiting on them, see fetchUserAsync
+     */
+    public CompletableFuture<List<GithubRepo>> fetchReposAsync(String username) {
+        if (username == null || username.isBlank()) {
+            return CompletableFuture.failedFuture(blankUsername());
+        }
+        Optional<List<GithubRepo>> cached = cacheInspector.cachedRepos(username);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        return reposLoads.load(GithubCacheInspector.key(username), () -> retrier.execute("fetchRepos", asyncExecutor,
+                () -> loadRepos(username, Priority.FOREGROUND, NO_PAGE_LISTENER),
+                ex -> recoverRepos(ex, username)));
+    }
+
+    public List<GithubRepo> refreshRepos(String username) {
+        return loadRepos(username, Priority.BACKGROUND, NO_PAGE_LISTENER);
+    }
+
+    /**
+     * Same calls as fetchRepos, but every page is also handed to onPage as soon as it and
+     * all the pages before it have arrived, so a caller can stream repos out in order
+     * without waiting for the last page. The merged list is cached like fetchRepos would.
+     * No retry here: once pages have been passed on, the call can't be started over.
+     */
+    public List<GithubRepo> streamRepos(String username, Consumer<List<GithubRepo>> onPage) {
+        return cache(GithubCacheInspector.REPOS_CACHE, username, loadRepos(username, Priority.FOREGROUND, onPage));
+    }
+
+    private <T> T cache(String cacheName, String username, T value) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) cache.put(GithubCacheInspector.key(username), value);
+        return value;
+    }
+
+    private static <T> T await(CompletableFuture<T> fetch) {
+        try {
+            return fetch.join();
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof RuntimeException re) throw re;
+            throw ce;
+        }
+    }
+
+    /**
+     * Conditional calls for every page of the repos endpoint with no caching or retry around them.
+     * Page 1 is fetched first; its Link header tells us the last page, and the remaining
+     * pages are then fetched in parallel by at most github.repos.page-concurrency workers
+     * on the repoPageExecutor. Pages are merged back in page order into a single list.
+     */
+    private List<GithubRepo> loadRepos(String username, Priority priority, Consumer<List<GithubRepo>> onPage) {
         requireUsername(username);
 
-        URI uri = UriComponentsBuilder.fromUriString(userReposUrl)
-                .buildAndExpand(username)
+        RepoPages previous = revalidationStore.repos(username);
+
+        RepoPage first;
+        try {
+            first = fetchReposPage(username, 1, previous == null ? null : previous.page(1), priority);
+        } catch (HttpClientErrorException.NotFound ex) {
+            negativeCache.markMissing(username);
+            throw ex;
+        }
+        int lastPage = lastPage(first.link())
+                .orElse(first.notModified() ? previous.lastPage() : 1);
+        if (lastPage > maxPages) {
+            LOGGER.warn("User={} has {} pages of repos, only the first {} are fetched", username, lastPage, maxPages);
+            lastPage = maxPages;
+        }
+
+        onPage.accept(first.page().body());
+
+        List<ValidatedResponse<List<GithubRepo>>> pages = new ArrayList<>(lastPage);
+        pages.add(first.page());
+        pages.addAll(fetchRemainingReposPages(username, lastPage, previous, priority, onPage));
+
+        RepoPages current = new RepoPages(pages);
+        revalidationStore.storeRepos(username, current);
+        return current.body();
+    }
+
+    private List<ValidatedResponse<List<GithubRepo>>> fetchRemainingReposPages(String username,
+                                                                              int lastPage,
+                                                                              RepoPages previous,
+                                                                              Priority priority,
+                                                                              Consumer<List<GithubRepo>> onPage) {
+        if (lastPage < 2) return List.of();
+
+        LOGGER.debug("Fetching {} more pages of repos for user={}", lastPage - 1, username);
+
+        // Worker w fetches pages 2 + w, 2 + w + workers, ... so no more than `workers`
+        // requests for this user are ever in flight at once
+        int workers = Math.min(pageConcurrency, lastPage - 1);
+        AtomicReferenceArray<ValidatedResponse<List<GithubRepo>>> results = new AtomicReferenceArray<>(lastPage + 1);
+        AtomicBoolean failed = new AtomicBoolean();
+        InOrderPages inOrder = new InOrderPages(results, lastPage, onPage);
+        CompletableFuture<?>[] running = new CompletableFuture<?>[workers];
+
+        for (int w = 0; w < workers; w++) {
+            int firstPage = 2 + w;
+            try {
+                running[w] = CompletableFuture.runAsync(() -> {
+                    for (int page = firstPage; page <= lastPage && !failed.get(); page += workers) {
+                        try {
+                            results.set(page, fetchReposPage(username, page, previous == null ? null : previous.page(page), priority).page());
+                            inOrder.arrived();
+                        } catch (RuntimeException ex) {
+                            failed.set(true);
+                            throw ex;
+                        }
+                    }
+                }, repoPageExecutor);
+            } catch (RejectedExecutionException ex) {
+                // The repoPageExecutor is full. The workers already started stop after the page
+                // they are on, and are waited for so none keeps calling Github for a failed load
+                failed.set(true);
+                CompletableFuture.allOf(Arrays.copyOf(running, w)).handle((done, error) -> null).join();
+                throw ex;
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(running).join();
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof RuntimeException re) throw re;
+            throw ce;
+        }
+
+        List<ValidatedResponse<List<GithubRepo>>> pages = new ArrayList<>(lastPage - 1);
+        for (int page = 2; page <= lastPage; page++) {
+            pages.add(results.get(page));
+        }
+        return pages;
+    }
+
+    private RepoPage fetchReposPage(String username,
+                                    int page,
+                                    ValidatedResponse<List<GithubRepo>> previous,
+                                    Priority priority) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(userReposUrl)
+                .queryParam("per_page", perPage);
+        if (page > 1) {
+            builder.queryParam("page", page);
+        }
+        URI uri = builder.buildAndExpand(username)
                 .encode()
                 .toUri();
 
-        return restClient.get()
+        ResponseEntity<GithubRepoPage> response = guards.call(GithubClientMetrics.REPOS,
+                () -> rateLimiter.acquire(GithubRateLimiter.CORE, priority),
+                () -> metrics.time(GithubClientMetrics.REPOS, priority, () -> restClient.get()
                 .uri(uri)
+                .headers(headers -> {
+                    if (previous != null) previous.applyTo(headers);
+                })
                 .retrieve()
                 .onStatus(s -> s.value() == 429, (req, res) -> {
                     throw HttpClientErrorException.create(
@@ -103,41 +379,177 @@ public class GithubClient {
                             null
                     );
                 })
-                .body(new ParameterizedTypeReference<List<GithubRepo>>() {});
+                .toEntity(GithubRepoPage.class)));
+
+        String link = response.getHeaders().getFirst(HttpHeaders.LINK);
+
+        if (previous != null && isNotModified(response)) {
+            LOGGER.debug("Repos page {} unchanged upstream, reusing cached body for user={}", page, username);
+            return new RepoPage(previous.revalidated(), true, link);
+        }
+
+        List<GithubRepo> repos = response.getBody() == null ? List.of() : response.getBody().repos();
+        return new RepoPage(ValidatedResponse.of(CompactRepoList.of(repos), response.getHeaders()), false, link);
+    }
+
+    /**
+     * Github only sends a Link header when there is more than one page, and only the
+     * pages before the last one carry rel="last"
+     */
+    static OptionalInt lastPage(String link) {
+        if (link == null) return OptionalInt.empty();
+        Matcher matcher = LAST_PAGE.matcher(link);
+        return matcher.find()
+                ? OptionalInt.of(Integer.parseInt(matcher.group(1)))
+                : OptionalInt.empty();
+    }
+
+    private GithubUser recoverUser(HttpClientErrorException.TooManyRequests ex, String username) {
+        return staleOr(revalidationStore.user(username), ex,
+                () -> new GithubUpstreamException("GitHub user call rate-limited after retries: " + username, ex));
+    }
+
+    private GithubUser recoverUser(ResourceAccessException ex, String username) {
+        return staleOr(revalidationStore.user(username), ex,
+                () -> new GithubUpstreamException("GitHub user call failed after retries: " + username, ex));
+    }
+
+    private GithubUser recoverUser(HttpServerErrorException ex, String username) {
+        return staleOr(revalidationStore.user(username), ex, () -> ex);
     }
 
-    @Recover
-    public GithubUser recoverUser(HttpClientErrorException.TooManyRequests ex, String username) {
-        throw new GithubUpstreamException("GitHub user call rate-limited after retries: " + username, ex);
+    private GithubUser recoverUser(GithubRateLimitedException ex, String username) {
+        return staleOr(revalidationStore.user(username), ex, () -> ex);
     }
 
-    @Recover
-    public GithubUser recoverUser(ResourceAccessException ex, String username) {
-        throw new GithubUpstreamException("GitHub user call failed after retries: " + username, ex);
+    private GithubUser recoverUser(GithubUnavailableException ex, String username) {
+        return staleOr(revalidationStore.user(username), ex, () -> ex);
     }
 
-    @Recover
-    public List<GithubRepo> recoverRepos(HttpClientErrorException.TooManyRequests ex, String username) {
-        throw new GithubUpstreamException("GitHub repos call rate-limited after retries: " + username, ex);
+    private GithubUser recoverUser(RejectedExecutionException ex, String username) {
+        return staleOr(revalidationStore.user(username), ex, () -> ex);
     }
 
-    @Recover
-    public List<GithubRepo> recoverRepos(ResourceAccessException ex, String username) {
-        throw new GithubUpstreamException("GitHub repos call failed after retries: " + username, ex);
+    private List<GithubRepo> recoverRepos(HttpClientErrorException.TooManyRequests ex, String username) {
+        return staleOr(revalidationStore.repos(username), ex,
+                () -> new GithubUpstreamException("GitHub repos call rate-limited after retries: " + username, ex));
+    }
+
+    private List<GithubRepo> recoverRepos(ResourceAccessException ex, String username) {
+        return staleOr(revalidationStore.repos(username), ex,
+                () -> new GithubUpstreamException("GitHub repos call failed after retries: " + username, ex));
+    }
+
+    private List<GithubRepo> recoverRepos(HttpServerErrorException ex, String username) {
+        return staleOr(revalidationStore.repos(username), ex, () -> ex);
+    }
+
+    private List<GithubRepo> recoverRepos(GithubRateLimitedException ex, String username) {
+        return staleOr(revalidationStore.repos(username), ex, () -> ex);
+    }
+
+    private List<GithubRepo> recoverRepos(GithubUnavailableException ex, String username) {
+        return staleOr(revalidationStore.repos(username), ex, () -> ex);
+    }
+
+    private List<GithubRepo> recoverRepos(RejectedExecutionException ex, String username) {
+        return staleOr(revalidationStore.repos(username), ex, () -> ex);
+    }
+
+    /**
+     * Picks the recovery for the failure a call ended with once the AsyncRetrier gave up on it.
+     * Anything without one is rethrown as is.
+     */
+    private GithubUser recoverUser(RuntimeException ex, String username) {
+        return switch (ex) {
+            case HttpClientErrorException.TooManyRequests tooMany -> recoverUser(tooMany, username);
+            case ResourceAccessException io -> recoverUser(io, username);
+            case HttpServerErrorException serverError -> recoverUser(serverError, username);
+            case GithubRateLimitedException rateLimited -> recoverUser(rateLimited, username);
+            case GithubUnavailableException unavailable -> recoverUser(unavailable, username);
+            case RejectedExecutionException rejected -> recoverUser(rejected, username);
+            default -> throw ex;
+        };
+    }
+
+    private List<GithubRepo> recoverRepos(RuntimeException ex, String username) {
+        return switch (ex) {
+            case HttpClientErrorException.TooManyRequests tooMany -> recoverRepos(tooMany, username);
+            case ResourceAccessException io -> recoverRepos(io, username);
+            case HttpServerErrorException serverError -> recoverRepos(serverError, username);
+            case GithubRateLimitedException rateLimited -> recoverRepos(rateLimited, username);
+            case GithubUnavailableException unavailable -> recoverRepos(unavailable, username);
+            case RejectedExecutionException rejected -> recoverRepos(rejected, username);
+            default -> throw ex;
+        };
+    }
+
+    /**
+     * Stale-if-error: when Github is rate limiting us, erroring or timing out, or we are too
+     * busy to call it, the last body we received is still a better answer than an error as
+     * long as it is not older than github.cache.stale-if-error.
+     */
+    private <T> T staleOr(LastKnown<T> previous,
+                          RuntimeException cause,
+                          Supplier<RuntimeException> failure) {
+        if (previous != null && previous.age().compareTo(staleIfError) <= 0) {
+            LOGGER.warn("Serving stale response aged {}s after upstream failure: {}",
+                    previous.age().toSeconds(), cause.getMessage());
+            return previous.body();
+        }
+        throw failure.get();
+    }
+
+    private record RepoPage(ValidatedResponse<List<GithubRepo>> page, boolean notModified, String link) {
+    }
+
+    /**
+     * Passes pages 2..lastPage on in page order while workers complete them in any order.
+     * Synchronized, so onPage is only ever called by one worker at a time.
+     */
+    private static final class InOrderPages {
+
+        private final AtomicReferenceArray<ValidatedResponse<List<GithubRepo>>> results;
+        private final int lastPage;
+        private final Consumer<List<GithubRepo>> onPage;
+        private int next = 2;
+
+        InOrderPages(AtomicReferenceArray<ValidatedResponse<List<GithubRepo>>> results,
+                     int lastPage,
+                     Consumer<List<GithubRepo>> onPage) {
+            this.results = results;
+            this.lastPage = lastPage;
+            this.onPage = onPage;
+        }
+
+        synchronized void arrived() {
+            while (next <= lastPage && results.get(next) != null) {
+                onPage.accept(results.get(next).body());
+                next++;
+            }
+        }
+    }
+
+    private static boolean isNotModified(ResponseEntity<?> response) {
+        return response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value();
     }
 
     private static void requireUsername(String username) {
         if (username == null || username.isBlank()) {
-            throw HttpClientErrorException.create(
-                    HttpStatus.BAD_REQUEST,
-                    "Username cannot be null/blank",
-                    null,
-                    null,
-                    null
-            );
+            throw blankUsername();
         }
     }
 
+    private static HttpClientErrorException blankUsername() {
+        return HttpClientErrorException.create(
+                HttpStatus.BAD_REQUEST,
+                "Username cannot be null/blank",
+                null,
+                null,
+                null
+        );
+    }
+
     public static class GithubUpstreamException extends RuntimeException {
         public GithubUpstreamException(String message, Throwable cause) {
             super(message, cause);
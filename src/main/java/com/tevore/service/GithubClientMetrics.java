@@ -0,0 +1,75 @@
+package com.tevore.service;
+
+import com.tevore.service.GithubRateLimiter.Priority;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times every HTTP call made to Github as github.client.requests, with a percentile histogram
+ * --
+ * Tags:
+ *  call       user, repos ( one call per page ) or graphql
+ *  priority   foreground ( a caller is waiting ) or background ( cache refresh )
+ *  outcome    success, not_modified, not_found, rate_limited, client_error, server_error, io_error or error
+ * Calls turned away by the GithubRateLimiter never reach Github and are counted in
+ * github.ratelimit.rejected instead.
+ */
+@Component
+public class GithubClientMetrics {
+
+    public static final String USER = "user";
+    public static final String REPOS = "repos";
+    public static final String GRAPHQL = "graphql";
+
+    private final MeterRegistry meterRegistry;
+
+    public GithubClientMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+    }
+
+    public <T> T time(String call, Priority priority, Supplier<T> upstream) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = upstream.get();
+            outcome = result instanceof ResponseEntity<?> response
+                    && response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()
+                    ? "not_modified"
+                    : "success";
+            return result;
+        } catch (RuntimeException ex) {
+            outcome = outcome(ex);
+            throw ex;
+        } finally {
+            Timer.builder("github.client.requests")
+                    .description("Calls to GitHub")
+                    .tag("call", call)
+                    .tag("priority", priority.name().toLowerCase(Locale.ROOT))
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    static String outcome(RuntimeException ex) {
+        if (ex instanceof HttpClientErrorException.NotFound) return "not_found";
+        if (ex instanceof HttpClientErrorException.TooManyRequests) return "rate_limited";
+        if (ex instanceof HttpClientErrorException) return "client_error";
+        if (ex instanceof HttpServerErrorException) return "server_error";
+        if (ex instanceof ResourceAccessException) return "io_error";
+        return "error";
+    }
+}
@@ -0,0 +1,359 @@
+package com.tevore.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tevore.domain.CompactRepoList;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Alternative to the two REST calls: a single POST to Github's GraphQL API returns the
+ * user and the first 100 repos together, halving the calls spent on a miss.
+ * Users with more repos cost one extra POST per further 100, following the cursor.
+ * Enabled with github.client.mode=graphql. Github only serves GraphQL to authenticated
+ * callers, so github.graphql.token has to be set as well.
+ * --
+ * Results are mapped onto the same GithubUser / GithubRepo records the REST calls produce
+ * ( API urls rather than html urls ) and written into the same caches, so cache hits and
+ * the background refresh work exactly as they do in REST mode. The refresh itself stays on
+ * conditional REST calls since those cost nothing when the data is unchanged.
+ * Only public repos are asked for, like REST returns, even when the token belongs to the user.
+ * --
+ * GraphQL answers most failures with a 200 and an errors array. Only a NOT_FOUND error, or no
+ * user and no errors, means the user does not exist; any other error is Github failing and
+ * is thrown as a 502 so it is retried, counted by the circuit breaker and not remembered as missing.
+ * --
+ * Calls run on the asyncExecutor and are retried by the AsyncRetrier like the REST fetches,
+ * concurrent misses for a username share one call ( SingleFlight ), and once the retries
+ * are spent the last known user and repos are served within the stale-if-error window.
+ */
+@Component
+@ConditionalOnProperty(name = "github.client.mode", havingValue = "graphql")
+public class GithubGraphqlClient {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(GithubGraphqlClient.class);
+
+    private static final String QUERY = """
+            query($login: String!, $first: Int!, $after: String) {
+              user(login: $login) {
+                login
+                avatarUrl
+                name
+                location
+                email
+                createdAt
+                repositories(first: $first, after: $after, ownerAffiliations: OWNER, privacy: PUBLIC,
+                             orderBy: {field: NAME, direction: ASC}) {
+                  pageInfo { hasNextPage endCursor }
+                  nodes { name nameWithOwner }
+                }
+              }
+            }
+            """;
+
+    private final RestClient restClient;
+
+    private final CacheManager cacheManager;
+
+    private final RevalidationStore revalidationStore;
+
+    private final GithubRateLimiter rateLimiter;
+
+    private final NegativeCache negativeCache;
+
+    private final GithubClientMetrics metrics;
+
+    private final UpstreamGuards guards;
+
+    private final Executor asyncExecutor;
+
+    private final AsyncRetrier retrier;
+
+    private final SingleFlight<UserWithRepos> loads;
+
+    @Value("${github.cache.stale-if-error:1h}")
+    private Duration staleIfError;
+
+    @Value("${github.graphql.url:https://api.github.com/graphql}")
+    private String graphqlUrl;
+
+    @Value("${github.graphql.token:}")
+    private String token;
+
+    @Value("${github.graphql.repo-url-prefix:https://api.github.com/repos/}")
+    private String repoUrlPrefix;
+
+    @Value("${github.users.url}")
+    private String usersUrl;
+
+    @Value("${github.repos.max-pages:100}")
+    private int maxPages;
+
+    public GithubGraphqlClient(@Qualifier("graphqlRestClient") RestClient restClient,
+                               CacheManager cacheManager,
+                               RevalidationStore revalidationStore,
+                               GithubRateLimiter rateLimiter,
+                               NegativeCache negativeCache,
+                               GithubClientMetrics metrics,
+                               UpstreamGuards guards,
+                               @Qualifier("asyncExecutor") Executor asyncExecutor,
+                               AsyncRetrier retrier) {
+        this.restClient = restClient;
+        this.cacheManager = cacheManager;
+        this.revalidationStore = revalidationStore;
+        this.rateLimiter = rateLimiter;
+        this.negativeCache = negativeCache;
+        this.metrics = metrics;
+        this.guards = guards;
+        this.asyncExecutor = asyncExecutor;
+        this.retrier = retrier;
+        // Only holds a call while it is in flight: Caffeine never expires a pending future, a
+        // completed one straight away, its results are in githubUsers / githubUserRepos by then
+        this.loads = new SingleFlight<>(Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ZERO)
+                .<String, UserWithRepos>buildAsync());
+    }
+
+    /**
+     * fetchUserWithReposAsync for a caller that waits for the outcome, failures are thrown as they are
+     */
+    public UserWithRepos fetchUserWithRepos(String username) {
+        try {
+            return fetchUserWithReposAsync(username).join();
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof RuntimeException re) throw re;
+            throw ce;
+        }
+    }
+
+    /**
+     * The user and their repos without a thread waiting on them: the call runs on the
+     * asyncExecutor and is retried by the AsyncRetrier, 5xx included. Cancelling the returned
+     * future cancels the call once no other caller is waiting on it.
+     */
+    public CompletableFuture<UserWithRepos> fetchUserWithReposAsync(String username) {
+        return loads.load(GithubCacheInspector.key(username), () -> retrier.execute("fetchUserWithRepos", asyncExecutor,
+                () -> loadUserWithRepos(username),
+                ex -> AsyncRetrier.isRetryable(ex) || ex instanceof HttpServerErrorException,
+                ex -> recoverUserWithRepos(ex, username)));
+    }
+
+    private UserWithRepos loadUserWithRepos(String username) {
+        GraphqlUser first = query(username, null);
+        GithubUser user = new GithubUser(
+                first.login(),
+                first.avatarUrl(),
+                UriComponentsBuilder.fromUriString(usersUrl).buildAndExpand(first.login()).encode().toUriString(),
+                first.name(),
+                first.location(),
+                blankToNull(first.email()),
+                first.createdAt()
+        );
+
+        List<GithubRepo> repos = new ArrayList<>();
+        GraphqlRepositories page = first.repositories();
+        addRepos(repos, page);
+        for (int pages = 1; hasNextPage(page) && pages < maxPages; pages++) {
+            page = query(username, page.pageInfo().endCursor()).repositories();
+            addRepos(repos, page);
+        }
+
+        List<GithubRepo> compact = CompactRepoList.of(repos);
+        store(username, user, compact);
+        return new UserWithRepos(user, compact);
+    }
+
+    /**
+     * Once the AsyncRetrier gave up: the last known user and repos if Github was failing
+     * and they are within github.cache.stale-if-error, otherwise the failure. Anything
+     * else is rethrown as is.
+     */
+    private UserWithRepos recoverUserWithRepos(RuntimeException ex, String username) {
+        RuntimeException failure = switch (ex) {
+            case HttpClientErrorException.TooManyRequests tooMany -> new GithubClient.GithubUpstreamException(
+                    "GitHub GraphQL call rate-limited after retries: " + username, tooMany);
+            case ResourceAccessException io -> new GithubClient.GithubUpstreamException(
+                    "GitHub GraphQL call failed after retries: " + username, io);
+            case HttpServerErrorException serverError -> serverError;
+            case GithubRateLimitedException rateLimited -> rateLimited;
+            case GithubUnavailableException unavailable -> unavailable;
+            case RejectedExecutionException rejected -> rejected;
+            default -> throw ex;
+        };
+
+        LastKnown<GithubUser> user = revalidationStore.user(username);
+        LastKnown<List<GithubRepo>> repos = revalidationStore.repos(username);
+        if (user != null && repos != null
+                && user.age().compareTo(staleIfError) <= 0 && repos.age().compareTo(staleIfError) <= 0) {
+            LOGGER.warn("Serving stale GraphQL response aged {}s after upstream failure: {}",
+                    user.age().toSeconds(), ex.getMessage());
+            return new UserWithRepos(user.body(), repos.body());
+        }
+        throw failure;
+    }
+
+    private GraphqlUser query(String username, String after) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("login", username);
+        variables.put("first", 100);
+        variables.put("after", after);
+
+        // GraphQL has its own budget, separate from the REST ( core ) one
+        // Errors are raised inside the guard so the circuit breaker sees Github failing
+        GraphqlUser user = guards.call(GithubClientMetrics.GRAPHQL,
+                () -> rateLimiter.acquire(GithubRateLimiter.GRAPHQL, GithubRateLimiter.Priority.FOREGROUND),
+                () -> userOf(username, metrics.time(GithubClientMetrics.GRAPHQL, GithubRateLimiter.Priority.FOREGROUND, () -> restClient.post()
+                .uri(graphqlUrl)
+                .headers(headers -> {
+                    if (!token.isBlank()) headers.setBearerAuth(token);
+                })
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new GraphqlRequest(QUERY, variables))
+                .retrieve()
+                .onStatus(s -> s.value() == 429, (req, res) -> {
+                    throw HttpClientErrorException.create(
+                            HttpStatus.TOO_MANY_REQUESTS,
+                            "Rate limited by GitHub",
+                            res.getHeaders(),
+                            null,
+                            null
+                    );
+                })
+                .body(GraphqlResponse.class))));
+
+        if (user == null) {
+            negativeCache.markMissing(username);
+            throw NegativeCache.notFound(username);
+        }
+        return user;
+    }
+
+    /**
+     * The user in response, or null when Github says there is no such user.
+     * Any other error, or no response at all, is thrown as an upstream failure.
+     */
+    private static GraphqlUser userOf(String username, GraphqlResponse response) {
+        if (response == null) {
+            throw upstreamFailure("empty response for " + username);
+        }
+        GraphqlUser user = response.data() == null ? null : response.data().user();
+        List<GraphqlError> errors = response.errors() == null ? List.of() : response.errors();
+
+        boolean notFound = false;
+        for (GraphqlError error : errors) {
+            if ("RATE_LIMITED".equals(error.type())) {
+                throw HttpClientErrorException.create(
+                        HttpStatus.TOO_MANY_REQUESTS, "Rate limited by GitHub", null, null, null);
+            }
+            notFound |= "NOT_FOUND".equals(error.type());
+        }
+        if (user != null || notFound) return user;
+        if (errors.isEmpty()) return null;
+
+        GraphqlError error = errors.get(0);
+        throw upstreamFailure(error.type() + " " + error.message() + " for " + username);
+    }
+
+    private static HttpServerErrorException upstreamFailure(String detail) {
+        return HttpServerErrorException.create(
+                HttpStatus.BAD_GATEWAY, "GitHub GraphQL error: " + detail, null, null, null);
+    }
+
+    private void addRepos(List<GithubRepo> repos, GraphqlRepositories page) {
+        if (page == null || page.nodes() == null) return;
+        for (GraphqlRepo node : page.nodes()) {
+            repos.add(new GithubRepo(node.name(), repoUrlPrefix + node.nameWithOwner()));
+        }
+    }
+
+    private void store(String username, GithubUser user, List<GithubRepo> repos) {
+        Cache users = cacheManager.getCache(GithubCacheInspector.USERS_CACHE);
+        Cache userRepos = cacheManager.getCache(GithubCacheInspector.REPOS_CACHE);
+        String key = GithubCacheInspector.key(username);
+        if (users != null) users.put(key, user);
+        if (userRepos != null) userRepos.put(key, repos);
+
+        // No validators from GraphQL, but the receive time still drives the Age header
+        // and the body can still be served stale if Github starts failing
+        Instant now = Instant.now();
+        revalidationStore.storeUser(username, new ValidatedResponse<>(user, null, null, now));
+        revalidationStore.storeRepos(username, new RepoPages(List.of(new ValidatedResponse<>(repos, null, null, now))));
+        LOGGER.debug("Cached user and {} repos from GraphQL for user={}", repos.size(), username);
+    }
+
+    private static boolean hasNextPage(GraphqlRepositories page) {
+        return page != null && page.pageInfo() != null && page.pageInfo().hasNextPage();
+    }
+
+    // Github's GraphQL API gives an empty string rather than null for a private email
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    public record UserWithRepos(GithubUser user, List<GithubRepo> repos) {
+    }
+
+    record GraphqlRequest(String query, Map<String, Object> variables) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record GraphqlResponse(GraphqlData data, List<GraphqlError> errors) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record GraphqlData(GraphqlUser user) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record GraphqlUser(
+            String login,
+            String avatarUrl,
+            String name,
+            String location,
+            String email,
+            Instant createdAt,
+            GraphqlRepositories repositories) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record GraphqlRepositories(GraphqlPageInfo pageInfo, List<GraphqlRepo> nodes) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record GraphqlPageInfo(boolean hasNextPage, String endCursor) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record GraphqlRepo(String name, String nameWithOwner) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record GraphqlError(String type, String message) {
+    }
+}
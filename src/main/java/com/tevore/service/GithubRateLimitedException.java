@@ -0,0 +1,21 @@
+package com.tevore.service;
+
+import java.time.Duration;
+
+/**
+ * Thrown by GithubRateLimiter when a call is not admitted, before anything is sent to Github.
+ * retryAfter is how long until the budget is expected back.
+ */
+public class GithubRateLimitedException extends GithubClient.GithubUpstreamException {
+
+    private final Duration retryAfter;
+
+    public GithubRateLimitedException(String message, Duration retryAfter) {
+        super(message, null);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,256 @@
+package com.tevore.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a live view of our Github rate limit budget from the X-RateLimit-* and
+ * Retry-After headers of every response ( see interceptor() ), and admits
+ * upstream calls against it before they are made.
+ * --
+ * Every call we admit is taken off the budget straight away, since many calls can be
+ * in flight before their headers come back. Nothing here waits: a call that is not admitted
+ * is told how long until the budget is back. When the budget runs out:
+ *  FOREGROUND calls ( a caller is waiting on them ) are tried again at the reset by the
+ *  AsyncRetrier if it is within github.rate-limit.max-wait, and fail fast otherwise
+ *  BACKGROUND calls ( cache refreshes ) fail fast, and stop being admitted once only
+ *  github.rate-limit.background-reserve calls are left, keeping those for callers
+ * --
+ * Budgets are tracked per X-RateLimit-Resource since REST ( core ) and GraphQL are
+ * limited separately. Only calls that miss the cache get here, so cache hits are never throttled.
+ */
+@Component
+public class GithubRateLimiter {
+
+    public enum Priority { FOREGROUND, BACKGROUND }
+
+    public static final String CORE = "core";
+    public static final String GRAPHQL = "graphql";
+
+    private final Logger LOGGER = LoggerFactory.getLogger(GithubRateLimiter.class);
+
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${github.rate-limit.max-wait:2s}")
+    private Duration maxWait;
+
+    @Value("${github.rate-limit.background-reserve:10}")
+    private int backgroundReserve;
+
+    public GithubRateLimiter(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+    }
+
+    /**
+     * Admits the call, or tells how long until the budget is back without waiting for it
+     * @return 0 when admitted, otherwise the milliseconds until the call can be made
+     */
+    public long tryAcquire(String resource, Priority priority) {
+        Budget budget = budgets.get(resource);
+        if (budget == null) return 0; // nothing heard from Github yet, the first call will tell us
+
+        int reserve = priority == Priority.BACKGROUND ? backgroundReserve : 0;
+        long waitMillis = budget.tryAdmit(reserve, System.currentTimeMillis());
+        if (waitMillis <= 0) return 0;
+
+        if (priority == Priority.BACKGROUND || waitMillis > maxWait.toMillis()) {
+            meterRegistry.counter("github.ratelimit.rejected",
+                    "resource", resource, "priority", priority.name().toLowerCase()).increment();
+        } else {
+            LOGGER.info("GitHub {} rate limit budget exhausted, call deferred {}ms to the reset", resource, waitMillis);
+        }
+        return waitMillis;
+    }
+
+    /**
+     * tryAcquire for a call about to be made: returns when admitted, otherwise throws
+     * GithubRateLimitedException with how long until the budget is back
+     */
+    public void acquire(String resource, Priority priority) {
+        long waitMillis = tryAcquire(resource, priority);
+        if (waitMillis > 0) {
+            throw new GithubRateLimitedException(
+                    "GitHub " + resource + " rate limit budget exhausted", Duration.ofMillis(waitMillis));
+        }
+    }
+
+    /**
+     * Reads the rate limit headers off a Github response, ignoring responses without them
+     */
+    public void record(HttpHeaders headers) {
+        Long retryAfterMillis = retryAfterMillis(headers);
+        String remaining = headers.getFirst("X-RateLimit-Remaining");
+        if (remaining == null && retryAfterMillis == null) return;
+
+        String resource = headers.getFirst("X-RateLimit-Resource");
+        Budget budget = budget(resource == null ? CORE : resource);
+        try {
+            budget.update(
+                    parseInt(headers.getFirst("X-RateLimit-Limit")),
+                    parseInt(remaining),
+                    parseLong(headers.getFirst("X-RateLimit-Reset")) * 1000,
+                    retryAfterMillis == null ? 0 : System.currentTimeMillis() + retryAfterMillis
+            );
+        } catch (NumberFormatException ex) {
+            LOGGER.warn("Unreadable rate limit headers from GitHub: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Records the headers of every response going through the RestClient, errors included
+     */
+    public ClientHttpRequestInterceptor interceptor() {
+        return (request, body, execution) -> {
+            ClientHttpResponse response = execution.execute(request, body);
+            record(response.getHeaders());
+            return response;
+        };
+    }
+
+    public int remaining(String resource) {
+        Budget budget = budgets.get(resource);
+        return budget == null ? -1 : budget.remaining();
+    }
+
+    /**
+     * Forgets everything heard from Github, mostly for tests
+     */
+    public void clear() {
+        budgets.values().forEach(Budget::clear);
+    }
+
+    private Budget budget(String resource) {
+        return budgets.computeIfAbsent(resource, name -> {
+            Budget budget = new Budget();
+            Gauge.builder("github.ratelimit.remaining", budget, Budget::remaining)
+                    .description("Calls left in the current GitHub rate limit window, -1 until known")
+                    .tag("resource", name)
+                    .register(meterRegistry);
+            Gauge.builder("github.ratelimit.limit", budget, Budget::limit)
+                    .tag("resource", name)
+                    .register(meterRegistry);
+            Gauge.builder("github.ratelimit.reset.seconds", budget, Budget::secondsUntilReset)
+                    .description("Seconds until the GitHub rate limit window resets")
+                    .tag("resource", name)
+                    .register(meterRegistry);
+            return budget;
+        });
+    }
+
+    /**
+     * How long the headers of a 429 ask us to stay away: Retry-After, or until
+     * X-RateLimit-Reset when the budget is spent. 0 when they don't say
+     */
+    static long waitMillis(HttpHeaders headers, long now) {
+        if (headers == null) return 0;
+        Long retryAfterMillis = retryAfterMillis(headers);
+        if (retryAfterMillis != null) return retryAfterMillis;
+        try {
+            if (parseInt(headers.getFirst("X-RateLimit-Remaining")) == 0) {
+                return Math.max(0, parseLong(headers.getFirst("X-RateLimit-Reset")) * 1000 - now);
+            }
+        } catch (NumberFormatException unreadable) {
+            // record() has already warned about these
+        }
+        return 0;
+    }
+
+    private static Long retryAfterMillis(HttpHeaders headers) {
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter == null) return null;
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException ex) {
+            try {
+                return Math.max(0, headers.getFirstDate(HttpHeaders.RETRY_AFTER) - System.currentTimeMillis());
+            } catch (IllegalArgumentException notADate) {
+                return null;
+            }
+        }
+    }
+
+    private static int parseInt(String value) {
+        return value == null ? -1 : Integer.parseInt(value.trim());
+    }
+
+    private static long parseLong(String value) {
+        return value == null ? 0 : Long.parseLong(value.trim());
+    }
+
+    static final class Budget {
+
+        private static final long UNKNOWN_RESET_WAIT_MILLIS = 1000;
+
+        private int limit = -1;
+        private int remaining = -1;
+        private long resetAtMillis;
+        private long blockedUntilMillis;
+        // Whether the window ending at resetAtMillis has already been assumed refilled
+        private boolean refilled;
+
+        /**
+         * @return 0 when admitted, otherwise how long until the budget is back
+         */
+        synchronized long tryAdmit(int reserve, long now) {
+            if (blockedUntilMillis > now) return blockedUntilMillis - now;
+            if (remaining < 0) return 0;
+
+            if (resetAtMillis > 0 && resetAtMillis <= now && limit > 0 && !refilled) {
+                // A new window started, assume the full budget once, until Github says otherwise
+                remaining = limit;
+                refilled = true;
+            }
+            if (remaining > reserve) {
+                remaining--;
+                return 0;
+            }
+            // Past the reset without a newer one from Github there is no telling when the next is
+            return resetAtMillis > now ? resetAtMillis - now : UNKNOWN_RESET_WAIT_MILLIS;
+        }
+
+        synchronized void update(int limit, int remaining, long resetAtMillis, long blockedUntilMillis) {
+            if (limit >= 0) this.limit = limit;
+            if (remaining >= 0) this.remaining = remaining;
+            if (resetAtMillis > this.resetAtMillis) {
+                this.resetAtMillis = resetAtMillis;
+                this.refilled = false;
+            }
+            if (blockedUntilMillis > 0) this.blockedUntilMillis = blockedUntilMillis;
+        }
+
+        synchronized void clear() {
+            limit = -1;
+            remaining = -1;
+            resetAtMillis = 0;
+            blockedUntilMillis = 0;
+            refilled = false;
+        }
+
+        synchronized int remaining() {
+            return remaining;
+        }
+
+        synchronized int limit() {
+            return limit;
+        }
+
+        synchronized double secondsUntilReset() {
+            return Math.max(0, resetAtMillis - System.currentTimeMillis()) / 1000.0;
+        }
+    }
+}
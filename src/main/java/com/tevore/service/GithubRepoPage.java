@@ -0,0 +1,11 @@
+package com.tevore.service;
+
+import com.tevore.domain.GithubRepo;
+
+import java.util.List;
+
+/**
+ * One page of the repos endpoint, read by GithubRepoPageConverter
+ */
+public record GithubRepoPage(List<GithubRepo> repos) {
+}
@@ -0,0 +1,104 @@
+package com.tevore.service;
+
+import com.tevore.domain.GithubRepo;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a page of Github repos straight off the token stream. Each repo object on the
+ * repos endpoint has around 100 fields plus nested owner / license / permissions objects,
+ * and we keep only name and url: everything else is skipped token by token with
+ * skipChildren, never bound or buffered, and GithubRepo instances are created directly.
+ * --
+ * Registered on the RestClient ahead of the Jackson converter ( see RestClientConfig ),
+ * and only used for the GithubRepoPage type.
+ */
+public class GithubRepoPageConverter extends AbstractHttpMessageConverter<GithubRepoPage> {
+
+    // Github's page size limit, so a full page never has to grow the list
+    private static final int MAX_PER_PAGE = 100;
+
+    private final JsonMapper jsonMapper;
+
+    public GithubRepoPageConverter(JsonMapper jsonMapper) {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        this.jsonMapper = jsonMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return GithubRepoPage.class == clazz;
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected GithubRepoPage readInternal(Class<? extends GithubRepoPage> clazz,
+                                          HttpInputMessage inputMessage) throws IOException {
+        try (JsonParser parser = jsonMapper.createParser(inputMessage.getBody())) {
+            return new GithubRepoPage(readRepos(parser));
+        } catch (JacksonException | IllegalArgumentException ex) {
+            throw new HttpMessageNotReadableException(
+                    "Could not read Github repos page: " + ex.getMessage(), ex, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(GithubRepoPage page, HttpOutputMessage outputMessage) {
+        throw new HttpMessageNotWritableException("GithubRepoPage is read only");
+    }
+
+    /**
+     * Expects a JSON array of repo objects; an empty body or null reads as no repos
+     */
+    public static List<GithubRepo> readRepos(JsonParser parser) {
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.VALUE_NULL) return List.of();
+        if (token != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("Expected an array of repos but got " + token);
+        }
+
+        List<GithubRepo> repos = new ArrayList<>(MAX_PER_PAGE);
+        while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+            repos.add(readRepo(parser));
+        }
+        if (token != JsonToken.END_ARRAY) {
+            throw new IllegalArgumentException("Expected a repo object but got " + token);
+        }
+        return repos;
+    }
+
+    private static GithubRepo readRepo(JsonParser parser) {
+        String name = null;
+        String url = null;
+
+        // Each iteration starts on a property name, its value is the next token
+        while (parser.nextToken() != JsonToken.END_OBJECT) {
+            String property = parser.currentName();
+            parser.nextToken();
+            if ("name".equals(property)) {
+                name = parser.getValueAsString();
+            } else if ("url".equals(property)) {
+                url = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new GithubRepo(name, url);
+    }
+}
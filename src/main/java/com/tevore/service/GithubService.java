@@ -2,17 +2,30 @@ package com.tevore.service;
 
 import com.tevore.domain.GithubRepo;
 import com.tevore.domain.GithubUser;
+import com.tevore.domain.GithubUserHeader;
 import com.tevore.domain.GithubUserWithReposResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 /**
  * This service class is the entrypoint to the actual downstream processing
@@ -33,23 +46,40 @@ public class GithubService {
 
     private final GithubServiceAsyncClient asyncClient;
 
-    public GithubService(GithubServiceAsyncClient asyncClient) {
-        this.asyncClient = asyncClient;
-    }
+    private final RevalidationStore revalidationStore;
 
-    public GithubUserWithReposResponse retrieveGithubUserAndRepoInfo(String username) {
+    private final GithubCacheInspector cacheInspector;
 
-        LOGGER.info("Initiating async calls");
+    private final ObjectProvider<GithubGraphqlClient> graphqlClient;
 
-        CompletableFuture<GithubUser> userFetch = asyncClient.fetchUserAsync(username);
-        CompletableFuture<List<GithubRepo>> reposFetch = asyncClient.fetchReposAsync(username);
+    private final NegativeCache negativeCache;
 
-        try {
-            GithubUser user = userFetch.join();
-            List<GithubRepo> repos = reposFetch.join();
+    private final SerializedResponseCache responseCache;
+
+    private final GithubClient githubClient;
+
+    @Value("${github.batch.concurrency:8}")
+    private int batchConcurrency;
 
-            return toResponse(user, repos);
+    public GithubService(GithubServiceAsyncClient asyncClient,
+                         RevalidationStore revalidationStore,
+                         GithubCacheInspector cacheInspector,
+                         ObjectProvider<GithubGraphqlClient> graphqlClient,
+                         NegativeCache negativeCache,
+                         SerializedResponseCache responseCache,
+                         GithubClient githubClient) {
+        this.asyncClient = asyncClient;
+        this.revalidationStore = revalidationStore;
+        this.cacheInspector = cacheInspector;
+        this.graphqlClient = graphqlClient;
+        this.negativeCache = negativeCache;
+        this.responseCache = responseCache;
+        this.githubClient = githubClient;
+    }
 
+    public GithubUserWithReposResponse retrieveGithubUserAndRepoInfo(String username) {
+        try {
+            return retrieveGithubUserAndRepoInfoAsync(username).join();
         } catch (CompletionException ce) {
             Throwable cause = ce.getCause() != null ? ce.getCause() : ce;
             if (cause instanceof RuntimeException re) throw re;
@@ -62,7 +92,207 @@ public class GithubService {
         }
     }
 
-    private GithubUserWithReposResponse toResponse(
+    /**
+     * The user and repos as a future that completes once both calls have; nothing blocks
+     * while they run or back off between retries. Known missing usernames and cache hits
+     * come back as already completed futures.
+     * Completing the returned future with a TimeoutException ( orTimeout ) or cancelling it
+     * cancels the calls still running for it.
+     */
+    public CompletableFuture<GithubUserWithReposResponse> retrieveGithubUserAndRepoInfoAsync(String username) {
+
+        // Known missing usernames are answered before anything is scheduled
+        if (negativeCache.isMissing(username)) {
+            return CompletableFuture.failedFuture(NegativeCache.notFound(username));
+        }
+
+        // Cache hits are answered with the already assembled response, without an executor hop
+        Optional<GithubUserWithReposResponse> cached = cachedResponse(username);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached.get());
+        }
+
+        GithubGraphqlClient graphql = graphqlClient.getIfAvailable();
+        if (graphql != null) {
+            return retrieveWithGraphql(graphql, username);
+        }
+
+        LOGGER.info("Initiating async calls");
+
+        CompletableFuture<GithubUser> userFetch = asyncClient.fetchUserAsync(username);
+        CompletableFuture<List<GithubRepo>> reposFetch = asyncClient.fetchReposAsync(username);
+
+        // One call failing does not cancel the other, whatever it gets is still cached
+        return cancelledWith(
+                userFetch.thenCombine(reposFetch, (user, repos) -> toResponse(username, user, repos)),
+                userFetch, reposFetch);
+    }
+
+    /**
+     * GraphQL mode ( github.client.mode=graphql ): a miss on either cache costs a single
+     * GraphQL call that refills both, instead of the two REST calls
+     */
+    private CompletableFuture<GithubUserWithReposResponse> retrieveWithGraphql(GithubGraphqlClient graphql,
+                                                                              String username) {
+        LOGGER.info("Initiating GraphQL call");
+        CompletableFuture<GithubGraphqlClient.UserWithRepos> fetch = graphql.fetchUserWithReposAsync(username);
+        return cancelledWith(
+                fetch.thenApply(fetched -> toResponse(username, fetched.user(), fetched.repos())),
+                fetch);
+    }
+
+    /**
+     * A caller that stopped waiting on lookup ( deadline or cancel ) takes the upstream calls with it
+     */
+    private static <T> CompletableFuture<T> cancelledWith(CompletableFuture<T> lookup, CompletableFuture<?>... calls) {
+        lookup.whenComplete((response, ex) -> {
+            if (ex instanceof TimeoutException || ex instanceof CancellationException) {
+                for (CompletableFuture<?> call : calls) call.cancel(false);
+            }
+        });
+        return lookup;
+    }
+
+    /**
+     * Looks up many usernames at once. Usernames whose user and repos are both cached, or
+     * that are known not to exist, are answered right away; only the misses go upstream, and no more than
+     * github.batch.concurrency of them are in flight at a time so a large batch
+     * can't flood the asyncExecutor queue.
+     * --
+     * Every username gets its own future, in the order given, so one failing username
+     * does not fail the others. A miss is looked up exactly like retrieveGithubUserAndRepoInfoAsync
+     * does, GraphQL mode included, started as an earlier one finishes rather than by a thread
+     * waiting for a slot. Completing its future with a TimeoutException ( orTimeout ) or
+     * cancelling it cancels the lookup, or keeps it from ever starting.
+     */
+    public Map<String, CompletableFuture<GithubUserWithReposResponse>> retrieveGithubUsersAndRepoInfo(
+            List<String> usernames) {
+        Map<String, CompletableFuture<GithubUserWithReposResponse>> lookups = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+
+        for (String username : usernames) {
+            if (negativeCache.isMissing(username)) {
+                lookups.put(username, CompletableFuture.failedFuture(NegativeCache.notFound(username)));
+                continue;
+            }
+            Optional<GithubUserWithReposResponse> cached = cachedResponse(username);
+            if (cached.isPresent()) {
+                lookups.put(username, CompletableFuture.completedFuture(cached.get()));
+            } else {
+                lookups.put(username, null);
+                misses.add(username);
+            }
+        }
+
+        LOGGER.info("Batch of {} usernames, {} not cached", usernames.size(), misses.size());
+
+        Queue<PendingLookup> pending = new ConcurrentLinkedQueue<>();
+        for (String username : misses) {
+            PendingLookup lookup = new PendingLookup(username, new CompletableFuture<>());
+            lookups.put(username, lookup.result());
+            pending.add(lookup);
+        }
+        for (int i = 0; i < Math.max(1, batchConcurrency); i++) {
+            startNext(pending);
+        }
+
+        return lookups;
+    }
+
+    /**
+     * Starts the next pending batch lookup the caller is still waiting for; once it is
+     * done, whichever way, the one after it is started
+     */
+    private void startNext(Queue<PendingLookup> pending) {
+        PendingLookup next = pending.poll();
+        while (next != null && next.result().isDone()) {
+            next = pending.poll();
+        }
+        if (next == null) return;
+
+        PendingLookup started = next;
+        CompletableFuture<GithubUserWithReposResponse> lookup;
+        try {
+            lookup = retrieveGithubUserAndRepoInfoAsync(started.username());
+        } catch (RuntimeException ex) {
+            lookup = CompletableFuture.failedFuture(ex);
+        }
+
+        CompletableFuture<GithubUserWithReposResponse> running = lookup;
+        started.result().whenComplete((response, ex) -> {
+            if (ex != null) running.cancel(false);
+        });
+        running.whenComplete((response, ex) -> {
+            if (ex == null) {
+                started.result().complete(response);
+            } else {
+                started.result().completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+            startNext(pending);
+        });
+    }
+
+    /**
+     * The user part of the response on its own, for the NDJSON representation which
+     * writes the user first and streams the repos after it
+     */
+    public GithubUserHeader retrieveGithubUserHeader(String username) {
+        if (negativeCache.isMissing(username)) {
+            throw NegativeCache.notFound(username);
+        }
+        GithubUser user = cacheInspector.cachedUser(username)
+                .orElseGet(() -> githubClient.fetchUser(username));
+        return new GithubUserHeader(
+                user.login(),
+                user.avatarUrl(),
+                user.url(),
+                user.name(),
+                user.location(),
+                user.email(),
+                formatCreatedAt(user)
+        );
+    }
+
+    /**
+     * Hands the repos to onPage in order: a cached list in one go, otherwise page by page
+     * as they arrive from Github so nothing waits for the last page
+     */
+    public void streamGithubRepos(String username, Consumer<List<GithubRepo>> onPage) {
+        Optional<List<GithubRepo>> cached = cacheInspector.cachedRepos(username);
+        if (cached.isPresent()) {
+            onPage.accept(cached.get());
+            return;
+        }
+        LOGGER.info("Streaming repos from upstream for user={}", username);
+        githubClient.streamRepos(username, onPage);
+    }
+
+    /**
+     * How long ago Github last confirmed the data we would answer with for this username,
+     * empty if we have nothing on record for it
+     */
+    public Optional<Duration> responseAge(String username) {
+        return revalidationStore.ageOf(username);
+    }
+
+    private Optional<GithubUserWithReposResponse> cachedResponse(String username) {
+        Optional<GithubUser> user = cacheInspector.cachedUser(username);
+        Optional<List<GithubRepo>> repos = cacheInspector.cachedRepos(username);
+        if (user.isPresent() && repos.isPresent()) {
+            return Optional.of(toResponse(username, user.get(), repos.get()));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Only builds a new response when the user or repos differ from the ones the last
+     * response for this username was built from, see SerializedResponseCache
+     */
+    private GithubUserWithReposResponse toResponse(String username, GithubUser user, List<GithubRepo> repos) {
+        return responseCache.assemble(username, user, repos, this::buildResponse);
+    }
+
+    private GithubUserWithReposResponse buildResponse(
             GithubUser user,
             List<GithubRepo> repos
     ) {
@@ -73,11 +303,19 @@ public class GithubService {
                 user.name(),
                 user.location(),
                 user.email(),
-                user.createdAt() == null
-                        ? null
-                        : RFC_1123.format(user.createdAt()),
-                List.copyOf(repos)
+                formatCreatedAt(user),
+                // The cached list itself, already compact and read-only, rather than a copy of it
+                repos
         );
     }
 
+    private record PendingLookup(String username, CompletableFuture<GithubUserWithReposResponse> result) {
+    }
+
+    private static String formatCreatedAt(GithubUser user) {
+        return user.createdAt() == null
+                ? null
+                : RFC_1123.format(user.createdAt());
+    }
+
 }
@@ -2,7 +2,6 @@ package com.tevore.service;
 
 import com.tevore.domain.GithubRepo;
 import com.tevore.domain.GithubUser;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,7 +15,9 @@ import java.util.concurrent.CompletableFuture;
  * Partial success is a possible option as one of the calls could fail.
  * Due to the potential rate-limit constraint, getting and caching some
  * data is better than wasting a successful call.
- *
+ * The futures come from GithubClient's async fetches, which run on the asyncExecutor and
+ * schedule their retries instead of sleeping, so no thread is held while a call backs off.
+ * A failure is logged here and passed on as the future's exception.
  */
 @Component
 public class GithubServiceAsyncClient {
@@ -29,26 +30,22 @@ public class GithubServiceAsyncClient {
         this.githubClient = githubClient;
     }
 
-    @Async("asyncExecutor")
     public CompletableFuture<GithubUser> fetchUserAsync(String username) {
         LOGGER.info("Fetching user information");
-        try {
-            return CompletableFuture.completedFuture(githubClient.fetchUser(username));
-        } catch (RuntimeException ex) {
-            LOGGER.error("Error fetching user information", ex);
-            return CompletableFuture.failedFuture(ex);
-        }
+        CompletableFuture<GithubUser> user = githubClient.fetchUserAsync(username);
+        user.whenComplete((fetched, ex) -> {
+            if (ex != null) LOGGER.error("Error fetching user information", ex);
+        });
+        return user;
     }
 
-    @Async("asyncExecutor")
     public CompletableFuture<List<GithubRepo>> fetchReposAsync(String username) {
         LOGGER.info("Fetching repo information");
-        try {
-            return CompletableFuture.completedFuture(githubClient.fetchRepos(username));
-        } catch (RuntimeException ex) {
-            LOGGER.error("Error fetching repo information", ex);
-            return CompletableFuture.failedFuture(ex);
-        }
+        CompletableFuture<List<GithubRepo>> repos = githubClient.fetchReposAsync(username);
+        repos.whenComplete((fetched, ex) -> {
+            if (ex != null) LOGGER.error("Error fetching repo information", ex);
+        });
+        return repos;
     }
 
 }
@@ -0,0 +1,22 @@
+package com.tevore.service;
+
+import java.time.Duration;
+
+/**
+ * Thrown by UpstreamGuards when a call is not made because Github is considered down
+ * ( open circuit ) or too many calls to it are already waiting ( full bulkhead ).
+ * retryAfter is how long until a call will be tried again.
+ */
+public class GithubUnavailableException extends GithubClient.GithubUpstreamException {
+
+    private final Duration retryAfter;
+
+    public GithubUnavailableException(String message, Duration retryAfter) {
+        super(message, null);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
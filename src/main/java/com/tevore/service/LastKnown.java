@@ -0,0 +1,13 @@
+package com.tevore.service;
+
+import java.time.Duration;
+
+/**
+ * Something we last received from Github, and how long ago Github confirmed it
+ */
+public interface LastKnown<T> {
+
+    T body();
+
+    Duration age();
+}
@@ -0,0 +1,86 @@
+package com.tevore.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Remembers usernames Github answered with a 404, so scrapers and typos hammering the
+ * same missing username get the usual "User not found" without two upstream calls each time.
+ * --
+ * Kept apart from the main caches with its own short github.negative-cache.ttl, since a
+ * username can be registered at any time, and bounded by github.negative-cache.maximum-size
+ * so a flood of random usernames can't grow it without limit.
+ * Github usernames are case-insensitive, so entries are keyed in lower case.
+ */
+@Component
+public class NegativeCache {
+
+    private final Cache<String, Boolean> missing;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    public NegativeCache(@Value("${github.negative-cache.ttl:1m}") Duration ttl,
+                         @Value("${github.negative-cache.maximum-size:10000}") long maximumSize,
+                         ObjectProvider<MeterRegistry> meterRegistry) {
+        this.missing = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .build();
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.hits = Counter.builder("github.negative.cache")
+                .description("Lookups answered as not found without calling Github")
+                .tag("result", "hit")
+                .register(registry);
+        this.misses = Counter.builder("github.negative.cache")
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    public boolean isMissing(String username) {
+        boolean known = username != null && missing.getIfPresent(key(username)) != null;
+        (known ? hits : misses).increment();
+        return known;
+    }
+
+    public void markMissing(String username) {
+        if (username != null) missing.put(key(username), Boolean.TRUE);
+    }
+
+    public void clear() {
+        missing.invalidateAll();
+    }
+
+    public long hitCount() {
+        return (long) hits.count();
+    }
+
+    public long missCount() {
+        return (long) misses.count();
+    }
+
+    /**
+     * The same exception Github's 404 produces, so GlobalExceptionHandler answers it the same way
+     */
+    public static HttpClientErrorException notFound(String username) {
+        return HttpClientErrorException.create(
+                HttpStatus.NOT_FOUND, "User not found: " + username, null, null, null);
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
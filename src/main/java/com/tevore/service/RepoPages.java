@@ -0,0 +1,56 @@
+package com.tevore.service;
+
+import com.tevore.domain.CompactRepoList;
+import com.tevore.domain.GithubRepo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every page of a user's repos as last received from Github, in page order.
+ * Each page keeps its own validators so that pages can be revalidated independently.
+ */
+public record RepoPages(List<ValidatedResponse<List<GithubRepo>>> pages) implements LastKnown<List<GithubRepo>> {
+
+    /**
+     * @param page 1-based page number, as Github numbers them
+     */
+    public ValidatedResponse<List<GithubRepo>> page(int page) {
+        return page >= 1 && page <= pages.size() ? pages.get(page - 1) : null;
+    }
+
+    public int lastPage() {
+        return pages.size();
+    }
+
+    /**
+     * All pages merged, in order, into a single list sized exactly once and kept in
+     * compact form, since this is what ends up in the githubUserRepos cache
+     */
+    @Override
+    public List<GithubRepo> body() {
+        int size = 0;
+        for (ValidatedResponse<List<GithubRepo>> page : pages) {
+            size += page.body().size();
+        }
+        List<GithubRepo> merged = new ArrayList<>(size);
+        for (ValidatedResponse<List<GithubRepo>> page : pages) {
+            merged.addAll(page.body());
+        }
+        return CompactRepoList.of(merged);
+    }
+
+    /**
+     * The age of the oldest page
+     */
+    @Override
+    public Duration age() {
+        Duration oldest = Duration.ZERO;
+        for (ValidatedResponse<List<GithubRepo>> page : pages) {
+            Duration age = page.age();
+            if (age.compareTo(oldest) > 0) oldest = age;
+        }
+        return oldest;
+    }
+}
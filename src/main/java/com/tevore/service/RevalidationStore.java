@@ -0,0 +1,119 @@
+package com.tevore.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tevore.configuration.RetainedSizeWeigher;
+import com.tevore.domain.GithubUser;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Holds on to the last Github response for a username after the main caches have let it go.
+ * When a githubUsers / githubUserRepos entry expires, the client uses what is stored here
+ * to send a conditional request ( If-None-Match / If-Modified-Since ). Github answers a
+ * 304 for unchanged data, which does not count against the rate limit, and the stored
+ * body is handed back to the cache as is.
+ * --
+ * The same bodies back stale-if-error serving when Github is failing, and their receive
+ * time is what the Age header on our responses reports.
+ * --
+ * Entries live well past the main cache TTL and are dropped after a period without use,
+ * so github.revalidation.ttl should be at least github.cache.stale-if-error.
+ * These are full copies that outlive the caches, so they are bounded by memory the same way:
+ * github.cache.revalidation-share of github.cache.memory-budget, split by github.cache.repos-share,
+ * with entries weighed by the bytes they retain ( RetainedSizeWeigher ).
+ * Keyed in lower case like the caches, Github usernames are case-insensitive.
+ */
+@Component
+public class RevalidationStore {
+
+    private final Cache<String, ValidatedResponse<GithubUser>> users;
+    private final Cache<String, RepoPages> repos;
+
+    public RevalidationStore(
+            @Value("${github.revalidation.ttl:1h}") Duration ttl,
+            @Value("${github.cache.memory-budget:64MB}") DataSize memoryBudget,
+            @Value("${github.cache.revalidation-share:0.25}") double revalidationShare,
+            @Value("${github.cache.repos-share:0.8}") double reposShare) {
+        long budget = (long) (memoryBudget.toBytes() * revalidationShare);
+        long reposBudget = (long) (budget * reposShare);
+        this.users = Caffeine.newBuilder()
+                .expireAfterAccess(ttl)
+                .maximumWeight(budget - reposBudget)
+                .weigher(new RetainedSizeWeigher())
+                .build();
+        this.repos = Caffeine.newBuilder()
+                .expireAfterAccess(ttl)
+                .maximumWeight(reposBudget)
+                .weigher(new RetainedSizeWeigher())
+                .build();
+    }
+
+    public ValidatedResponse<GithubUser> user(String username) {
+        return users.getIfPresent(key(username));
+    }
+
+    public void storeUser(String username, ValidatedResponse<GithubUser> response) {
+        if (response.body() == null) {
+            users.invalidate(key(username));
+        } else {
+            users.put(key(username), response);
+        }
+    }
+
+    public RepoPages repos(String username) {
+        return repos.getIfPresent(key(username));
+    }
+
+    public void storeRepos(String username, RepoPages pages) {
+        if (pages.pages().isEmpty()) {
+            repos.invalidate(key(username));
+        } else {
+            repos.put(key(username), pages);
+        }
+    }
+
+    /**
+     * How long ago Github last confirmed the data for this username. When the user and
+     * repos were confirmed at different times the older of the two is reported.
+     */
+    public Optional<Duration> ageOf(String username) {
+        ValidatedResponse<GithubUser> user = users.getIfPresent(key(username));
+        RepoPages userRepos = repos.getIfPresent(key(username));
+
+        if (user == null && userRepos == null) return Optional.empty();
+        if (user == null) return Optional.of(userRepos.age());
+        if (userRepos == null) return Optional.of(user.age());
+
+        Duration userAge = user.age();
+        Duration reposAge = userRepos.age();
+        return Optional.of(userAge.compareTo(reposAge) >= 0 ? userAge : reposAge);
+    }
+
+    /**
+     * Live, read-only views of everything stored, for CacheSnapshotter
+     */
+    public Map<String, ValidatedResponse<GithubUser>> allUsers() {
+        return Collections.unmodifiableMap(users.asMap());
+    }
+
+    public Map<String, RepoPages> allRepos() {
+        return Collections.unmodifiableMap(repos.asMap());
+    }
+
+    public void clear() {
+        users.invalidateAll();
+        repos.invalidateAll();
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
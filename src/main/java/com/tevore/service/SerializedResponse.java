@@ -0,0 +1,18 @@
+package com.tevore.service;
+
+import org.springframework.util.DigestUtils;
+
+/**
+ * The final JSON of a GithubUserWithReposResponse, ready to be written out as is,
+ * with a strong ETag computed from those exact bytes
+ */
+public record SerializedResponse(byte[] json, String etag) {
+
+    public static SerializedResponse of(byte[] json) {
+        return new SerializedResponse(json, "\"" + DigestUtils.md5DigestAsHex(json) + "\"");
+    }
+
+    public int length() {
+        return json.length;
+    }
+}
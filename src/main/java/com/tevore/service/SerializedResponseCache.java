@@ -0,0 +1,106 @@
+package com.tevore.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tevore.configuration.RetainedSizeWeigher;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import com.tevore.domain.GithubUserWithReposResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiFunction;
+
+/**
+ * Keeps the assembled GithubUserWithReposResponse per username, and the JSON it
+ * serializes to, so a cache hit is answered without rebuilding the record, formatting
+ * createdAt or running Jackson again. The response holds the cached repos list itself.
+ * --
+ * An assembled response is only reused while the githubUsers and githubUserRepos entries
+ * it was built from are still the very same objects. A refresh, expiry or eviction of
+ * either one replaces them, so the next request assembles ( and serializes ) a new response.
+ * A 304 from Github hands back the same body, so revalidated data keeps its bytes.
+ * --
+ * The JSON is keyed by the response object itself ( weak, identity keys ), so it goes
+ * away together with the response and never outlives the data it was written from.
+ * Github usernames are case-insensitive, so responses are keyed in lower case like the caches.
+ * --
+ * Both are bounded by memory: github.cache.response-share of github.cache.memory-budget, half
+ * for the responses and half for their JSON, weighed by the bytes they retain ( RetainedSizeWeigher ).
+ * A response is weighed as if it shared nothing with the caches, since it keeps the user's
+ * Strings and the repos alive after the caches let go of them.
+ */
+@Component
+public class SerializedResponseCache {
+
+    private final Cache<String, Assembled> assembled;
+
+    private final Cache<GithubUserWithReposResponse, SerializedResponse> serialized;
+
+    private final JsonMapper jsonMapper;
+
+    public SerializedResponseCache(
+            @Value("${github.cache.ttl:5m}") Duration ttl,
+            @Value("${github.cache.stale-while-revalidate:10m}") Duration staleWhileRevalidate,
+            @Value("${github.cache.memory-budget:64MB}") DataSize memoryBudget,
+            @Value("${github.cache.response-share:0.1}") double responseShare,
+            JsonMapper jsonMapper) {
+        long budget = (long) (memoryBudget.toBytes() * responseShare);
+        RetainedSizeWeigher weigher = new RetainedSizeWeigher();
+        this.assembled = Caffeine.newBuilder()
+                .expireAfterWrite(ttl.plus(staleWhileRevalidate))
+                .maximumWeight(budget / 2)
+                // The user's Strings are the response's own, so the response carries the weight
+                .weigher((String username, Assembled entry) -> weigher.weigh(username, entry.response()))
+                .build();
+        this.serialized = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumWeight(budget - budget / 2)
+                // The response is weighed in assembled, here only the bytes count
+                .weigher((GithubUserWithReposResponse response, SerializedResponse json) -> weigher.weigh(null, json))
+                .build();
+        this.jsonMapper = jsonMapper;
+    }
+
+    /**
+     * The response previously assembled from exactly this user and repos, or a new one from builder
+     */
+    public GithubUserWithReposResponse assemble(
+            String username,
+            GithubUser user,
+            List<GithubRepo> repos,
+            BiFunction<GithubUser, List<GithubRepo>, GithubUserWithReposResponse> builder) {
+        Assembled previous = assembled.getIfPresent(key(username));
+        if (previous != null && previous.user() == user && previous.repos() == repos) {
+            return previous.response();
+        }
+
+        GithubUserWithReposResponse response = builder.apply(user, repos);
+        assembled.put(key(username), new Assembled(user, repos, response));
+        return response;
+    }
+
+    /**
+     * The JSON for this response, written by Jackson the first time it is asked for
+     */
+    public SerializedResponse serialize(GithubUserWithReposResponse response) {
+        return serialized.get(response, r -> SerializedResponse.of(jsonMapper.writeValueAsBytes(r)));
+    }
+
+    public void clear() {
+        assembled.invalidateAll();
+        serialized.invalidateAll();
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private record Assembled(GithubUser user, List<GithubRepo> repos, GithubUserWithReposResponse response) {
+    }
+}
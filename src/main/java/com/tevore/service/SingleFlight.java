@@ -0,0 +1,99 @@
+package com.tevore.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * One load per key at a time, shared through the Caffeine AsyncCache it loads into.
+ * The future of a load is the cache entry from the moment it starts: callers missing the
+ * same key find it there and wait on it instead of starting their own load, without a
+ * thread blocked while they do, and once it completes the cache answers with its value.
+ * A load that fails is dropped from the cache by Caffeine, the next caller starts a new one.
+ * --
+ * Every caller gets its own future, so one caller timing out or cancelling does not fail
+ * the others. Only when every caller has given up is the load itself cancelled, which
+ * stops the AsyncRetrier from scheduling any more attempts for it.
+ */
+final class SingleFlight<T> {
+
+    private final AsyncCache<String, T> cache;
+
+    SingleFlight(AsyncCache<String, T> cache) {
+        this.cache = cache;
+    }
+
+    CompletableFuture<T> load(String key, Supplier<CompletableFuture<T>> load) {
+        while (true) {
+            Flight<T> created = new Flight<>();
+            CompletableFuture<T> current = cache.get(key, (k, executor) -> created);
+            if (current == created) {
+                // Outside Caffeine's compute, the load may well write to this cache itself
+                created.start(load);
+            }
+
+            if (current instanceof Flight<T> flight && !flight.isDone()) {
+                CompletableFuture<T> waiter = flight.addWaiter();
+                if (waiter != null) return waiter;
+            } else if (!current.isCancelled()) {
+                // Loaded already, or failed for the caller that started it
+                return current;
+            }
+            // Everyone waiting on it gave up and it is being cancelled, start a new one
+            cache.asMap().remove(key, current);
+        }
+    }
+
+    private static final class Flight<T> extends CompletableFuture<T> {
+
+        private CompletableFuture<T> upstream;
+        private int waiters;
+        private boolean abandoned;
+
+        synchronized CompletableFuture<T> addWaiter() {
+            if (abandoned) return null;
+            waiters++;
+            CompletableFuture<T> waiter = copy();
+            waiter.whenComplete((value, ex) -> {
+                if (ex != null && !isDone()) abandon();
+            });
+            return waiter;
+        }
+
+        void start(Supplier<CompletableFuture<T>> load) {
+            CompletableFuture<T> started;
+            try {
+                started = load.get();
+            } catch (RuntimeException ex) {
+                started = CompletableFuture.failedFuture(ex);
+            }
+
+            boolean cancel;
+            synchronized (this) {
+                upstream = started;
+                cancel = abandoned;
+            }
+            if (cancel) started.cancel(false);
+
+            started.whenComplete((value, ex) -> {
+                if (ex == null) {
+                    complete(value);
+                } else {
+                    completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                }
+            });
+        }
+
+        private void abandon() {
+            CompletableFuture<T> cancel;
+            synchronized (this) {
+                if (--waiters > 0 || abandoned) return;
+                abandoned = true;
+                cancel = upstream;
+            }
+            if (cancel != null) cancel.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.tevore.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A bulkhead and a circuit breaker per Github upstream ( user, repos and graphql ), so a
+ * degraded endpoint can't take every thread down with it.
+ * --
+ * Each call goes through, in order:
+ *  the circuit breaker   refuses the call while the circuit is open ( see CircuitBreaker )
+ *  the bulkhead          at most github.guard.{upstream}.max-concurrent calls in flight, waiting
+ *                        up to github.guard.max-wait for a slot
+ *  admission             the GithubRateLimiter, which turns the call away while the budget is spent;
+ *                        last, so only a call that is about to go out takes from the budget
+ * A refused call throws GithubUnavailableException straight away. The AsyncRetrier does not
+ * retry it, and the recover functions in GithubClient and GithubGraphqlClient answer it with
+ * stale data where there is some.
+ * --
+ * Only 429s, 5xx and I/O errors count as failures. A 404 or a 304 is Github working fine.
+ * Meters, tagged by upstream: github.circuit.state ( 0 closed, 1 open, 2 half open ),
+ * github.circuit.transitions, github.circuit.rejected, github.bulkhead.active and github.bulkhead.rejected
+ */
+@Component
+public class UpstreamGuards {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(UpstreamGuards.class);
+
+    private final Map<String, Guard> guards;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Duration maxWait;
+
+    public UpstreamGuards(@Value("${github.guard.user.max-concurrent:20}") int userMaxConcurrent,
+                          @Value("${github.guard.repos.max-concurrent:16}") int reposMaxConcurrent,
+                          @Value("${github.guard.graphql.max-concurrent:20}") int graphqlMaxConcurrent,
+                          @Value("${github.guard.max-wait:50ms}") Duration maxWait,
+                          @Value("${github.circuit.window:20}") int window,
+                          @Value("${github.circuit.minimum-calls:10}") int minimumCalls,
+                          @Value("${github.circuit.failure-rate-threshold:50}") int failureRateThreshold,
+                          @Value("${github.circuit.slow-call-duration:2s}") Duration slowCallDuration,
+                          @Value("${github.circuit.slow-call-rate-threshold:80}") int slowCallRateThreshold,
+                          @Value("${github.circuit.open-duration:30s}") Duration openDuration,
+                          @Value("${github.circuit.half-open-calls:3}") int halfOpenCalls,
+                          ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        this.maxWait = maxWait;
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(window, minimumCalls, failureRateThreshold,
+                slowCallDuration, slowCallRateThreshold, openDuration, halfOpenCalls);
+        this.guards = Map.of(
+                GithubClientMetrics.USER, guard(GithubClientMetrics.USER, userMaxConcurrent, settings),
+                GithubClientMetrics.REPOS, guard(GithubClientMetrics.REPOS, reposMaxConcurrent, settings),
+                GithubClientMetrics.GRAPHQL, guard(GithubClientMetrics.GRAPHQL, graphqlMaxConcurrent, settings)
+        );
+    }
+
+    public <T> T call(String upstream, Runnable admission, Supplier<T> call) {
+        Guard guard = guards.get(upstream);
+
+        long waitMillis = guard.breaker.tryAcquire(System.currentTimeMillis());
+        if (waitMillis > 0) {
+            guard.circuitRejected.increment();
+            throw new GithubUnavailableException("GitHub " + upstream + " circuit is open",
+                    Duration.ofMillis(Math.max(1_000, waitMillis)));
+        }
+
+        try {
+            if (!guard.bulkhead.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                guard.bulkheadRejected.increment();
+                throw new GithubUnavailableException("Too many GitHub " + upstream + " calls in flight",
+                        Duration.ofSeconds(1));
+            }
+        } catch (InterruptedException ex) {
+            guard.breaker.onCancelled();
+            Thread.currentThread().interrupt();
+            throw new GithubUnavailableException("Interrupted waiting for a GitHub " + upstream + " slot",
+                    Duration.ofSeconds(1));
+        } catch (RuntimeException ex) {
+            guard.breaker.onCancelled();
+            throw ex;
+        }
+
+        // Last, so a call the breaker or the bulkhead turns away doesn't spend a budget token
+        try {
+            admission.run();
+        } catch (RuntimeException ex) {
+            guard.bulkhead.release();
+            guard.breaker.onCancelled();
+            throw ex;
+        }
+
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            transitioned(guard, guard.breaker.onResult(false, System.nanoTime() - start, System.currentTimeMillis()));
+            return result;
+        } catch (RuntimeException ex) {
+            transitioned(guard, guard.breaker.onResult(isFailure(ex), System.nanoTime() - start, System.currentTimeMillis()));
+            throw ex;
+        } finally {
+            guard.bulkhead.release();
+        }
+    }
+
+    public CircuitBreaker.State state(String upstream) {
+        return guards.get(upstream).breaker.state();
+    }
+
+    /**
+     * Closes every circuit, mostly for tests
+     */
+    public void reset() {
+        guards.values().forEach(guard -> guard.breaker.reset());
+    }
+
+    static boolean isFailure(RuntimeException ex) {
+        return ex instanceof HttpClientErrorException.TooManyRequests
+                || ex instanceof HttpServerErrorException
+                || ex instanceof ResourceAccessException;
+    }
+
+    private void transitioned(Guard guard, CircuitBreaker.State state) {
+        if (state == null) return;
+        if (state == CircuitBreaker.State.OPEN) {
+            LOGGER.warn("GitHub {} circuit opened, failing fast for the next calls", guard.upstream);
+        } else {
+            LOGGER.info("GitHub {} circuit {}", guard.upstream, state.name().toLowerCase());
+        }
+        meterRegistry.counter("github.circuit.transitions",
+                "upstream", guard.upstream, "state", state.name().toLowerCase()).increment();
+    }
+
+    private Guard guard(String upstream, int maxConcurrent, CircuitBreaker.Settings settings) {
+        Guard guard = new Guard(upstream, new CircuitBreaker(settings), new Semaphore(maxConcurrent),
+                Counter.builder("github.circuit.rejected").tag("upstream", upstream).register(meterRegistry),
+                Counter.builder("github.bulkhead.rejected").tag("upstream", upstream).register(meterRegistry));
+        Gauge.builder("github.circuit.state", guard.breaker, breaker -> breaker.state().ordinal())
+                .description("0 closed, 1 open, 2 half open")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        Gauge.builder("github.bulkhead.active", guard.bulkhead, bulkhead -> maxConcurrent - bulkhead.availablePermits())
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        return guard;
+    }
+
+    private record Guard(String upstream,
+                         CircuitBreaker breaker,
+                         Semaphore bulkhead,
+                         Counter circuitRejected,
+                         Counter bulkheadRejected) {
+    }
+}
@@ -0,0 +1,48 @@
+package com.tevore.service;
+
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * The last body received from Github along with the validators Github sent with it
+ * and the time Github last confirmed it. Either validator can be null if Github did not return it.
+ */
+public record ValidatedResponse<T>(
+        T body,
+        String etag,
+        String lastModified,
+        Instant receivedAt
+) implements LastKnown<T> {
+
+    public static <T> ValidatedResponse<T> of(T body, HttpHeaders headers) {
+        return new ValidatedResponse<>(
+                body,
+                headers.getETag(),
+                headers.getFirst(HttpHeaders.LAST_MODIFIED),
+                Instant.now()
+        );
+    }
+
+    /**
+     * Same body and validators, confirmed by Github as unchanged just now ( 304 )
+     */
+    public ValidatedResponse<T> revalidated() {
+        return new ValidatedResponse<>(body, etag, lastModified, Instant.now());
+    }
+
+    @Override
+    public Duration age() {
+        return Duration.between(receivedAt, Instant.now());
+    }
+
+    public void applyTo(HttpHeaders headers) {
+        if (etag != null) {
+            headers.setIfNoneMatch(etag);
+        }
+        if (lastModified != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+}
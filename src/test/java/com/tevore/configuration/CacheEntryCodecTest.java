@@ -0,0 +1,62 @@
+package com.tevore.configuration;
+
+import com.tevore.domain.CompactRepoList;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheEntryCodecTest {
+
+    @Test
+    void shouldRoundTripUsers() {
+        GithubUser full = new GithubUser("some-user",
+                "https://avatars.githubusercontent.com/u/583231?v=4",
+                "https://api.github.com/users/some-user",
+                "Sömé Üser",
+                "Somewhere",
+                "some-user@example.com",
+                Instant.parse("2014-03-04T12:24:54.123Z"));
+        GithubUser bare = new GithubUser("some-user", null, null, null, null, null, null);
+
+        assertEquals(full, CacheEntryCodec.decode(CacheEntryCodec.encode(full, false)));
+        assertEquals(bare, CacheEntryCodec.decode(CacheEntryCodec.encode(bare, true)));
+    }
+
+    @Test
+    void shouldRoundTripReposWithAndWithoutCompression() {
+        List<GithubRepo> repos = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            repos.add(new GithubRepo("repo-" + i, "https://api.github.com/repos/some-user/repo-" + i));
+        }
+        repos.add(new GithubRepo("forked", "https://api.github.com/repos/other-user/forked"));
+        repos.add(new GithubRepo("unnamed", null));
+
+        byte[] raw = CacheEntryCodec.encode(repos, false);
+        byte[] deflated = CacheEntryCodec.encode(repos, true);
+
+        assertEquals(repos, CacheEntryCodec.decode(raw));
+        assertEquals(repos, CacheEntryCodec.decode(deflated));
+        assertTrue(deflated.length < raw.length / 2, raw.length + " -> " + deflated.length);
+        // The url prefix is written once, not per repo
+        assertTrue(raw.length < 500 * 16, "encoded " + raw.length);
+
+        List<GithubRepo> compact = CompactRepoList.of(repos.subList(0, 500));
+        assertEquals(compact, CacheEntryCodec.decode(CacheEntryCodec.encode(compact, false)));
+        assertEquals(List.of(), CacheEntryCodec.decode(CacheEntryCodec.encode(List.of(), false)));
+    }
+
+    @Test
+    void shouldNotEncodeOtherValues() {
+        assertNull(CacheEntryCodec.encode(null, false));
+        assertNull(CacheEntryCodec.encode("some-user", false));
+        assertNull(CacheEntryCodec.encode(List.of("some-user"), false));
+        assertNull(CacheEntryCodec.encode(Map.of(), false));
+    }
+}
@@ -0,0 +1,68 @@
+package com.tevore.configuration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GzipResponseInterceptorTest {
+
+    private static final String JSON = "{\"login\":\"some-user\"}";
+
+    private final GzipResponseInterceptor interceptor = new GzipResponseInterceptor();
+
+    @Test
+    void shouldAskForGzipAndInflateTheBody() throws IOException {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, URI.create("http://api.test/users/some-user"));
+        MockClientHttpResponse compressed = new MockClientHttpResponse(gzip(JSON), HttpStatus.OK);
+        compressed.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        compressed.getHeaders().set(HttpHeaders.ETAG, "W/\"abc\"");
+        compressed.getHeaders().setContentLength(gzip(JSON).length);
+
+        ClientHttpResponse response = interceptor.intercept(request, new byte[0], (req, body) -> compressed);
+
+        assertEquals("gzip", request.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+        assertEquals(JSON, new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8));
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_LENGTH));
+        assertEquals("W/\"abc\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    void shouldPassUncompressedAndEmptyBodiesThrough() throws IOException {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, URI.create("http://api.test/users/some-user"));
+        request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "identity");
+        MockClientHttpResponse plain = new MockClientHttpResponse(JSON.getBytes(StandardCharsets.UTF_8), HttpStatus.OK);
+
+        ClientHttpResponse response = interceptor.intercept(request, new byte[0], (req, body) -> plain);
+
+        assertEquals("identity", request.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+        assertSame(plain, response);
+
+        MockClientHttpResponse notModified = new MockClientHttpResponse(new byte[0], HttpStatus.NOT_MODIFIED);
+        notModified.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        ClientHttpResponse revalidated = interceptor.intercept(request, new byte[0], (req, body) -> notModified);
+
+        assertEquals(0, revalidated.getBody().readAllBytes().length);
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
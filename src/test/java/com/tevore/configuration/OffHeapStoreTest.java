@@ -0,0 +1,81 @@
+package com.tevore.configuration;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapStoreTest {
+
+    @Test
+    void shouldReturnWhatWasPutLast() {
+        OffHeapStore store = new OffHeapStore(1024, 256, Duration.ofMinutes(1));
+
+        store.put("some-user", bytes("first"));
+        store.put("some-user", bytes("second"));
+        store.put("other-user", bytes("third"));
+
+        assertEquals("second", text(store.get("some-user")));
+        assertEquals("third", text(store.get("other-user")));
+        assertNull(store.get("missing-user"));
+        assertEquals(2, store.size());
+        assertEquals(2 * 8 + "some-user".length() + "second".length() + "other-user".length() + "third".length(),
+                store.liveBytes());
+    }
+
+    @Test
+    void shouldDropTheOldestSegmentOnceFull() {
+        // Four segments of two 64 byte records each
+        OffHeapStore store = new OffHeapStore(4 * 128, 128, Duration.ofMinutes(1));
+
+        for (int i = 0; i < 10; i++) {
+            store.put("user-" + i, new byte[64 - 8 - 6]);
+        }
+
+        // Writing user-8 recycled the segment holding user-0 and user-1
+        assertNull(store.get("user-0"));
+        assertNull(store.get("user-1"));
+        for (int i = 2; i < 10; i++) {
+            assertNotNull(store.get("user-" + i), "user-" + i);
+        }
+        assertEquals(8, store.size());
+        assertEquals(8 * 64, store.liveBytes());
+    }
+
+    @Test
+    void shouldNotReturnExpiredOrRemovedValues() throws InterruptedException {
+        OffHeapStore store = new OffHeapStore(1024, 256, Duration.ofMillis(20));
+        store.put("some-user", bytes("first"));
+        store.put("other-user", bytes("second"));
+
+        store.remove("other-user");
+        assertNull(store.get("other-user"));
+        assertNotNull(store.get("some-user"));
+
+        Thread.sleep(40);
+        assertNull(store.get("some-user"));
+        assertEquals(0, store.size());
+        assertEquals(0, store.liveBytes());
+    }
+
+    @Test
+    void shouldRefuseValuesLargerThanASegment() {
+        OffHeapStore store = new OffHeapStore(1024, 256, Duration.ofMinutes(1));
+        store.put("some-user", bytes("first"));
+
+        store.put("some-user", new byte[512]);
+
+        assertNull(store.get("some-user"));
+        assertEquals(0, store.liveBytes());
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(OffHeapStore.Stored stored) {
+        return new String(stored.value(), StandardCharsets.UTF_8);
+    }
+}
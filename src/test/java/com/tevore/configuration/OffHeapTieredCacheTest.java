@@ -0,0 +1,128 @@
+package com.tevore.configuration;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.tevore.domain.GithubUser;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapTieredCacheTest {
+
+    private static final GithubUser SOME_USER = user("some-user");
+    private static final GithubUser OTHER_USER = user("other-user");
+
+    private final OffHeapStore store = new OffHeapStore(64 * 1024, 16 * 1024, Duration.ofMinutes(10));
+
+    @Test
+    void shouldMoveWhatL1EvictsOffHeapAndBackOnAMiss() {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> l1 = l1();
+        OffHeapTieredCache cache = new OffHeapTieredCache("githubUsers", l1, store, Duration.ofMinutes(5), false);
+
+        cache.put("some-user", SOME_USER);
+        cache.put("other-user", OTHER_USER);
+        evictAll(l1);
+
+        assertNull(l1.getIfPresent("some-user"));
+        assertNotNull(store.get("some-user"));
+
+        assertEquals(SOME_USER, cache.get("some-user", GithubUser.class));
+
+        // Back on the heap, the other user is still off it
+        assertEquals(SOME_USER, l1.getIfPresent("some-user"));
+        assertNull(store.get("some-user"));
+        assertNotNull(store.get("other-user"));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void shouldAnswerALoadFromL2BeforeCallingTheLoader() {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> l1 = l1();
+        OffHeapTieredCache cache = new OffHeapTieredCache("githubUsers", l1, store, Duration.ofMinutes(5), false);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.put("some-user", SOME_USER);
+        cache.put("other-user", OTHER_USER);
+        evictAll(l1);
+
+        assertEquals(SOME_USER, cache.get("some-user", () -> {
+            loads.incrementAndGet();
+            return user("loaded");
+        }));
+        assertEquals(user("loaded"), cache.get("missing-user", () -> {
+            loads.incrementAndGet();
+            return user("loaded");
+        }));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void shouldKeepEachKeyInOneTierOnly() {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> l1 = l1();
+        OffHeapTieredCache cache = new OffHeapTieredCache("githubUsers", l1, store, Duration.ofMinutes(5), false);
+
+        cache.put("some-user", SOME_USER);
+        cache.put("other-user", OTHER_USER);
+        evictAll(l1);
+
+        // A newer value written to L1 must not be shadowed later by the old one off-heap
+        GithubUser renamed = new GithubUser("some-user", null, null, "Renamed", null, null, null);
+        cache.put("some-user", renamed);
+        assertNull(store.get("some-user"));
+
+        cache.evict("other-user");
+        cache.clear();
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void shouldTreatEntriesHeldLongerThanTheTtlAsMissesWithoutRefreshAhead() throws InterruptedException {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> l1 = l1();
+        OffHeapTieredCache cache = new OffHeapTieredCache("githubUsers", l1, store, Duration.ofMillis(10), false);
+
+        cache.put("some-user", SOME_USER);
+        cache.put("other-user", OTHER_USER);
+        evictAll(l1);
+        Thread.sleep(30);
+
+        assertNull(cache.get("some-user"));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void shouldOnlyDemoteEntriesEvictedForSize() {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> l1 = l1();
+        OffHeapTieredCache cache = new OffHeapTieredCache("githubUsers", l1, store, Duration.ofMinutes(5), false);
+
+        cache.put("some-user", SOME_USER);
+        l1.invalidate("some-user");
+        l1.cleanUp();
+
+        assertEquals(0, store.size());
+    }
+
+    // Maintenance on the calling thread, so evictions have happened once a call returns
+    private com.github.benmanes.caffeine.cache.Cache<Object, Object> l1() {
+        return Caffeine.newBuilder()
+                .maximumSize(10)
+                .executor(Runnable::run)
+                .evictionListener(OffHeapTieredCache.demoteTo(store, false))
+                .build();
+    }
+
+    // Shrinking the bound evicts for size, whichever entries TinyLFU would have picked
+    private static void evictAll(com.github.benmanes.caffeine.cache.Cache<Object, Object> l1) {
+        Policy.Eviction<Object, Object> eviction = l1.policy().eviction().orElseThrow();
+        eviction.setMaximum(0);
+        l1.cleanUp();
+        eviction.setMaximum(10);
+    }
+
+    private static GithubUser user(String login) {
+        return new GithubUser(login, null, "https://api.github.com/users/" + login, null, null, null, null);
+    }
+}
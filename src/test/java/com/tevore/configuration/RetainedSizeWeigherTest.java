@@ -0,0 +1,74 @@
+package com.tevore.configuration;
+
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import com.tevore.service.RepoPages;
+import com.tevore.service.ValidatedResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetainedSizeWeigherTest {
+
+    private final RetainedSizeWeigher weigher = new RetainedSizeWeigher();
+
+    @Test
+    void shouldEstimateStringsLikeCompactStrings() {
+        // 24 bytes of String, 16 + 3 bytes of Latin-1 array aligned to 24
+        assertEquals(48, RetainedSizeWeigher.estimate("abc"));
+        // The same 3 chars as UTF-16 take 16 + 6 bytes, still aligned to 24
+        assertEquals(48, RetainedSizeWeigher.estimate("äbč"));
+        assertEquals(24 + 40, RetainedSizeWeigher.estimate("abcdefghijk".replace('k', 'č')));
+        assertEquals(0, RetainedSizeWeigher.estimate(null));
+    }
+
+    @Test
+    void shouldWeighUsersByTheirFields() {
+        GithubUser bare = new GithubUser("some-user", null, null, null, null, null, null);
+        GithubUser full = new GithubUser("some-user",
+                "https://avatars.githubusercontent.com/u/583231?v=4",
+                "https://api.github.com/users/some-user",
+                "Some User",
+                "Somewhere",
+                "some-user@example.com",
+                Instant.parse("2014-03-04T12:24:54Z"));
+
+        assertTrue(weigher.weigh("some-user", full) > weigher.weigh("some-user", bare) + 150);
+    }
+
+    @Test
+    void shouldWeighRepoListsByTheirLength() {
+        int few = weigher.weigh("some-user", repos(3));
+        int many = weigher.weigh("some-user", repos(3000));
+
+        // Every repo costs the same, the entry and list overhead is paid once
+        long perRepo = (many - few) / 2997;
+        assertEquals(RetainedSizeWeigher.estimate(repos(1)) - RetainedSizeWeigher.estimate(List.of()), perRepo, 8);
+        assertTrue(perRepo > 100);
+    }
+
+    @Test
+    void shouldWeighStoredResponsesByTheirBodiesAndValidators() {
+        Instant receivedAt = Instant.parse("2024-01-01T00:00:00Z");
+        ValidatedResponse<List<GithubRepo>> page = new ValidatedResponse<>(repos(100), "\"abc\"", null, receivedAt);
+        RepoPages pages = new RepoPages(List.of(page, page));
+
+        long body = RetainedSizeWeigher.estimate(repos(100));
+        assertTrue(RetainedSizeWeigher.estimate(page) > body + RetainedSizeWeigher.estimate("\"abc\""));
+        assertTrue(RetainedSizeWeigher.estimate(pages) > 2 * RetainedSizeWeigher.estimate(page));
+    }
+
+    private static List<GithubRepo> repos(int count) {
+        List<GithubRepo> repos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Same length names so every repo weighs the same
+            String name = "repo-" + (10_000 + i);
+            repos.add(new GithubRepo(name, "https://api.github.com/repos/some-user/" + name));
+        }
+        return repos;
+    }
+}
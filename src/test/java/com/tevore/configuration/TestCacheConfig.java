@@ -8,6 +8,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
 
 import java.time.Duration;
+import java.util.List;
 
 @TestConfiguration
 @Profile("test")
@@ -15,16 +16,19 @@ public class TestCacheConfig {
 
     @Bean
     public CacheManager cacheManager() {
-        CaffeineCacheManager manager = new CaffeineCacheManager(
-                "githubUsers",
-                "githubUserRepos"
-        );
+        CaffeineCacheManager manager = new CaffeineCacheManager();
 
+        // AsyncCaches like CachingConfig's, GithubClient shares its loads through them
+        manager.setAsyncCacheMode(true);
         manager.setCaffeine(Caffeine.newBuilder()
                 .maximumSize(100)
                 .expireAfterWrite(Duration.ofSeconds(5)) // short TTL for tests
                 .recordStats()
         );
+        manager.setCacheNames(List.of(
+                "githubUsers",
+                "githubUserRepos"
+        ));
 
         return manager;
     }
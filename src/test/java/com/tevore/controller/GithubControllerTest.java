@@ -1,24 +1,58 @@
 package com.tevore.controller;
 
+import com.tevore.configuration.BoundedVirtualThreadExecutor;
 import com.tevore.configuration.CachingConfig;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUserHeader;
+import com.tevore.domain.GithubUserWithReposResponse;
 import com.tevore.error.GlobalExceptionHandler;
+import com.tevore.service.AsyncRetrier;
 import com.tevore.service.GithubService;
+import com.tevore.service.SerializedResponseCache;
 import com.tevore.utils.TestUtils;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.web.client.HttpClientErrorException;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(GithubController.class)
-@Import({GlobalExceptionHandler.class, CachingConfig.class})
+@Import({GlobalExceptionHandler.class, CachingConfig.class, SerializedResponseCache.class})
+@TestPropertySource(properties = "github.request.deadline=200ms")
 public class GithubControllerTest {
 
     @Autowired
@@ -27,21 +61,157 @@ public class GithubControllerTest {
     @MockitoBean
     private GithubService githubService;
 
+    @Autowired
+    private SerializedResponseCache responseCache;
+
     @Test
     void shouldReturnUser() throws Exception {
-        when(githubService.retrieveGithubUserAndRepoInfo("some-user"))
-                .thenReturn(TestUtils.generateGitHubUserWithRepos());
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user"))
+                .thenReturn(CompletableFuture.completedFuture(TestUtils.generateGitHubUserWithRepos()));
 
-        mockMvc.perform(MockMvcRequestBuilders
+        performAsync(MockMvcRequestBuilders
                         .get("/user/{username}", "some-user"))
                 .andExpect(status().isOk())
                 .andExpect(MockMvcResultMatchers.jsonPath("$.login").value("some-user"));
     }
 
+    @Test
+    void shouldWriteCachedResponseFromPreSerializedJson() throws Exception {
+        GithubUserWithReposResponse response = TestUtils.generateGitHubUserWithRepos();
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user")).thenReturn(CompletableFuture.completedFuture(response));
+
+        byte[] json = responseCache.serialize(response).json();
+
+        performAsync(MockMvcRequestBuilders
+                        .get("/user/{username}", "some-user"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, json.length))
+                .andExpect(MockMvcResultMatchers.content().bytes(json))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.avatar_url").value(response.avatarUrl()));
+    }
+
+    @Test
+    void shouldReturnAgeOfCachedData() throws Exception {
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user"))
+                .thenReturn(CompletableFuture.completedFuture(TestUtils.generateGitHubUserWithRepos()));
+        when(githubService.responseAge("some-user"))
+                .thenReturn(Optional.of(Duration.ofSeconds(42)));
+
+        performAsync(MockMvcRequestBuilders
+                        .get("/user/{username}", "some-user"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.AGE, "42"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=300, public"));
+    }
+
+    @Test
+    void shouldSendMaxAgeWithoutAgeWhenNoAgeIsKnown() throws Exception {
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user"))
+                .thenReturn(CompletableFuture.completedFuture(TestUtils.generateGitHubUserWithRepos()));
+        when(githubService.responseAge("some-user")).thenReturn(Optional.empty());
+
+        performAsync(MockMvcRequestBuilders
+                        .get("/user/{username}", "some-user"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=300, public"))
+                .andExpect(header().doesNotExist(HttpHeaders.AGE));
+    }
+
+    @Test
+    void shouldAnswerMatchingIfNoneMatchWithNotModified() throws Exception {
+        GithubUserWithReposResponse response = TestUtils.generateGitHubUserWithRepos();
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user")).thenReturn(CompletableFuture.completedFuture(response));
+
+        String etag = performAsync(MockMvcRequestBuilders
+                        .get("/user/{username}", "some-user"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals(responseCache.serialize(response).etag(), etag);
+
+        performAsync(MockMvcRequestBuilders
+                        .get("/user/{username}", "some-user")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"stale\", " + etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(MockMvcResultMatchers.content().string(""));
+    }
+
+    @Test
+    void shouldReturnBodyWhenIfNoneMatchDoesNotMatch() throws Exception {
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user"))
+                .thenReturn(CompletableFuture.completedFuture(TestUtils.generateGitHubUserWithRepos()));
+
+        performAsync(MockMvcRequestBuilders
+                        .get("/user/{username}", "some-user")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.login").value("some-user"));
+    }
+
+    @Test
+    void shouldAnswerWithGatewayTimeoutAndGiveUpOnGithubAfterDeadline() throws Exception {
+        CompletableFuture<GithubUserWithReposResponse> neverAnswered = new CompletableFuture<>();
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user")).thenReturn(neverAnswered);
+
+        performAsync(MockMvcRequestBuilders
+                        .get("/user/{username}", "some-user"))
+                .andExpect(status().isGatewayTimeout())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errorMessages[0]")
+                        .value("GitHub did not answer in time, try again later"));
+
+        // The service's future is what it cancels its upstream calls from
+        assertTrue(neverAnswered.isCompletedExceptionally());
+    }
+
+    @Test
+    void shouldStreamUserThenOneRepoPerLineForNdjson() throws Exception {
+        when(githubService.retrieveGithubUserHeader("some-user"))
+                .thenReturn(new GithubUserHeader("some-user", null, null, null, null, null, null));
+        doAnswer(invocation -> {
+            Consumer<List<GithubRepo>> onPage = invocation.getArgument(1);
+            onPage.accept(List.of(new GithubRepo("repo-1", "example.com")));
+            onPage.accept(List.of(new GithubRepo("repo-2", "example.com")));
+            return null;
+        }).when(githubService).streamGithubRepos(eq("some-user"), any());
+
+        MvcResult started = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/user/{username}", "some-user")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        List<String> lines = body.lines().toList();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"login\":\"some-user\""));
+        assertTrue(lines.get(1).contains("\"name\":\"repo-1\""));
+        assertTrue(lines.get(2).contains("\"name\":\"repo-2\""));
+    }
+
+    @Test
+    void shouldAnswerMissingUserWithJsonErrorForNdjson() throws Exception {
+        when(githubService.retrieveGithubUserHeader("not-found-user"))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null));
+
+        MvcResult started = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/user/{username}", "not-found-user")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started))
+                .andExpect(status().isNotFound())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errorMessages[0]").value(TestUtils.USER_NOT_FOUND));
+    }
+
     @Test
     void shouldThrowErrorMessageDueToMissingUsernameValue() throws Exception {
-        when(githubService.retrieveGithubUserAndRepoInfo("some-user"))
-                .thenReturn(TestUtils.generateGitHubUserWithRepos());
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user"))
+                .thenReturn(CompletableFuture.completedFuture(TestUtils.generateGitHubUserWithRepos()));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/user/{username}", ""))
@@ -52,8 +222,8 @@ public class GithubControllerTest {
 
     @Test
     void shouldThrowErrorMessageDueToInvalidUsername() throws Exception {
-        when(githubService.retrieveGithubUserAndRepoInfo("some-user"))
-                .thenReturn(TestUtils.generateGitHubUserWithRepos());
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user"))
+                .thenReturn(CompletableFuture.completedFuture(TestUtils.generateGitHubUserWithRepos()));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/user/{username}", "--bad-user"))
@@ -69,8 +239,8 @@ public class GithubControllerTest {
 
     @Test
     void shouldThrowErrorMessageDueToUsernameBeingTooLong() throws Exception {
-        when(githubService.retrieveGithubUserAndRepoInfo("some-user"))
-                .thenReturn(TestUtils.generateGitHubUserWithRepos());
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user"))
+                .thenReturn(CompletableFuture.completedFuture(TestUtils.generateGitHubUserWithRepos()));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/user/{username}", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"))
@@ -81,13 +251,90 @@ public class GithubControllerTest {
 
     @Test
     void shouldThrowErrorMessageWhenUserIsNotFound() throws Exception {
-        when(githubService.retrieveGithubUserAndRepoInfo("not-found-user"))
-                .thenThrow(HttpClientErrorException.class);
+        when(githubService.retrieveGithubUserAndRepoInfoAsync("not-found-user"))
+                .thenReturn(CompletableFuture.failedFuture(
+                        HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null)));
 
-        mockMvc.perform(MockMvcRequestBuilders
+        performAsync(MockMvcRequestBuilders
                         .get("/user/{username}", "not-found-user"))
                 .andExpect(status().isNotFound())
                 .andExpect(MockMvcResultMatchers.jsonPath("$.errorMessages[0]").value(TestUtils.USER_NOT_FOUND));
 
     }
+
+    @Test
+    void shouldAnswerServiceUnavailableWhenEveryExecutorSlotIsBusy() throws Exception {
+        BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor("test-", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        AsyncRetrier retrier = new AsyncRetrier(new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        AtomicReference<RuntimeException> recovered = new AtomicReference<>();
+
+        try {
+            // Nothing stale to recover with, so the rejection is what the lookup fails with
+            when(githubService.retrieveGithubUserAndRepoInfoAsync("some-user"))
+                    .thenReturn(retrier.execute("fetchUser", executor, TestUtils::generateGitHubUserWithRepos, ex -> {
+                        recovered.set(ex);
+                        throw ex;
+                    }));
+
+            performAsync(MockMvcRequestBuilders
+                            .get("/user/{username}", "some-user"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+            assertInstanceOf(RejectedExecutionException.class, recovered.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void shouldReturnPerUsernameResultsForBatch() throws Exception {
+        when(githubService.retrieveGithubUsersAndRepoInfo(List.of("some-user", "not-found-user")))
+                .thenReturn(new LinkedHashMap<>(Map.of(
+                        "some-user", CompletableFuture.completedFuture(TestUtils.generateGitHubUserWithRepos()),
+                        "not-found-user", CompletableFuture.failedFuture(
+                                HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null))
+                )));
+
+        performAsync(MockMvcRequestBuilders
+                        .post("/users:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"usernames\":[\"some-user\",\"Some-User\",\"bad--user\",\"not-found-user\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results.length()").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[0].username").value("some-user"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[0].status").value(200))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[0].user.login").value("some-user"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[1].username").value("bad--user"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[1].status").value(400))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[1].errorMessages[0]").value(TestUtils.INVALID_FORMAT_USERNAME))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[2].username").value("not-found-user"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[2].status").value(404))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[2].errorMessages[0]").value(TestUtils.USER_NOT_FOUND));
+    }
+
+    // /user/{username} and /users:batch answer with a future, the response is only written by the async dispatch
+    private ResultActions performAsync(RequestBuilder request) throws Exception {
+        MvcResult started = mockMvc.perform(request)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started));
+    }
+
+    @Test
+    void shouldRejectEmptyBatch() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/users:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"usernames\":[]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errorMessages[0]").value("At least one username is required"));
+    }
 }
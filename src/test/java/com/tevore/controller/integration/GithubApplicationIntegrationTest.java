@@ -6,6 +6,9 @@ import com.tevore.controller.GithubController;
 import com.tevore.domain.GithubRepo;
 import com.tevore.domain.GithubUser;
 import com.tevore.domain.GithubUserWithReposResponse;
+import com.tevore.service.NegativeCache;
+import com.tevore.service.RevalidationStore;
+import com.tevore.service.UpstreamGuards;
 import com.tevore.utils.TestUtils;
 import jakarta.validation.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
@@ -42,6 +45,15 @@ public class GithubApplicationIntegrationTest {
     @Autowired
     CacheManager cacheManager;
 
+    @Autowired
+    RevalidationStore revalidationStore;
+
+    @Autowired
+    NegativeCache negativeCache;
+
+    @Autowired
+    UpstreamGuards guards;
+
     @InjectWireMock
     WireMockServer wireMockServer;
 
@@ -56,6 +68,9 @@ public class GithubApplicationIntegrationTest {
 
         users.clear();
         repos.clear();
+        revalidationStore.clear();
+        negativeCache.clear();
+        guards.reset();
     }
 
     @Test
@@ -69,12 +84,12 @@ public class GithubApplicationIntegrationTest {
         stubFor(get(urlEqualTo("/users/some-user"))
                 .willReturn(okJson("{\"login\":\"some-user\"}")));
 
-        stubFor(get(urlEqualTo("/users/some-user/repos"))
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
                 .willReturn(okJson("[{\"name\":\"repo\",\"url\":\"example.com\"}]")));
 
         // Two calls to ensure the cache is being hit
-        GithubUserWithReposResponse firstCall = githubController.retrieveGithubUser("some-user");
-        GithubUserWithReposResponse secondCall = githubController.retrieveGithubUser("some-user");
+        GithubUserWithReposResponse firstCall = githubController.retrieveGithubUser("some-user", null).join().getBody();
+        GithubUserWithReposResponse secondCall = githubController.retrieveGithubUser("some-user", null).join().getBody();
 
         // Basic response assertions
         assertEquals(firstCall.login(), secondCall.login());
@@ -94,7 +109,7 @@ public class GithubApplicationIntegrationTest {
 
         // Since we hit the cache, wiremock should have a single count per endpoint
         wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user")));
-        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos")));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
     }
 
     @Test
@@ -109,19 +124,19 @@ public class GithubApplicationIntegrationTest {
         stubFor(get(urlEqualTo("/users/some-user"))
                 .willReturn(okJson("{\"login\":\"some-user\"}")));
 
-        stubFor(get(urlEqualTo("/users/some-user/repos"))
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
                 .willReturn(okJson("[{\"name\":\"repo\",\"url\":\"example.com\"}]")));
 
-        githubController.retrieveGithubUser("some-user");
+        githubController.retrieveGithubUser("some-user", null).join();
 
         TestUtils.awaitUntilNull(githubUserCache, "some-user", Duration.ofSeconds(10));
         TestUtils.awaitUntilNull(githubRepoCache, "some-user", Duration.ofSeconds(10));
 
-        githubController.retrieveGithubUser("some-user");
+        githubController.retrieveGithubUser("some-user", null).join();
 
         // After eviction, both endpoints should be called again
         wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user")));
-        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos")));
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
     }
 
     @Test
@@ -140,7 +155,7 @@ public class GithubApplicationIntegrationTest {
                         .withBody("{\"message\":\"Repos not found\"}")));
 
         RuntimeException ex = assertThrows(RuntimeException.class, () ->
-                githubController.retrieveGithubUser("nonexistent-user"));
+                githubController.retrieveGithubUser("nonexistent-user", null).join());
 
         assertTrue(containsCause(ex, HttpClientErrorException.NotFound.class),
                 "Expected NotFound in cause chain, but got: " + ex.getClass());
@@ -149,6 +164,26 @@ public class GithubApplicationIntegrationTest {
         wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/users/nonexistent-user/repos")));
     }
 
+    @Test
+    public void shouldAnswerRepeatedLookupOfMissingUserFromNegativeCache() {
+        stubFor(get(urlPathEqualTo("/users/nonexistent-user"))
+                .willReturn(aResponse().withStatus(404)));
+        stubFor(get(urlPathEqualTo("/users/nonexistent-user/repos"))
+                .willReturn(aResponse().withStatus(404)));
+
+        assertThrows(RuntimeException.class, () -> githubController.retrieveGithubUser("nonexistent-user", null).join());
+        long hitsBefore = negativeCache.hitCount();
+        RuntimeException second = assertThrows(RuntimeException.class,
+                () -> githubController.retrieveGithubUser("Nonexistent-User", null).join());
+
+        assertTrue(containsCause(second, HttpClientErrorException.NotFound.class));
+        assertEquals(hitsBefore + 1, negativeCache.hitCount());
+
+        // Only the first lookup went to Github
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/users/nonexistent-user")));
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/users/nonexistent-user/repos")));
+    }
+
     @Test
     public void shouldFailDueToServiceErrorAndCachesReposIfReposSucceeds() {
         stubFor(get(urlPathEqualTo("/users/some-user"))
@@ -158,7 +193,7 @@ public class GithubApplicationIntegrationTest {
                 .willReturn(okJson("[{\"name\":\"repo\",\"url\":\"example.com\"}]")));
 
         RuntimeException ex = assertThrows(RuntimeException.class, () ->
-                githubController.retrieveGithubUser("some-user"));
+                githubController.retrieveGithubUser("some-user", null).join());
 
         assertTrue(containsCause(ex, HttpServerErrorException.class),
                 "Expected HttpServerErrorException in cause chain but got: " + ex.getClass());
@@ -189,29 +224,29 @@ public class GithubApplicationIntegrationTest {
                 .willReturn(okJson("{\"login\":\"some-user\"}")));
 
         // repos: 429 then 200
-        stubFor(get(urlEqualTo("/users/some-user/repos"))
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
                 .inScenario("retry-repos")
                 .whenScenarioStateIs(STARTED)
                 .willReturn(aResponse().withStatus(429))
                 .willSetStateTo("ok"));
 
-        stubFor(get(urlEqualTo("/users/some-user/repos"))
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
                 .inScenario("retry-repos")
                 .whenScenarioStateIs("ok")
                 .willReturn(okJson("[{\"name\":\"repo\",\"url\":\"example.com\"}]")));
 
-        GithubUserWithReposResponse result = githubController.retrieveGithubUser("some-user");
+        GithubUserWithReposResponse result = githubController.retrieveGithubUser("some-user", null).join().getBody();
         assertEquals("some-user", result.login());
         assertEquals(1, result.repos().size());
 
         // verify retries happened
         wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user")));
-        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos")));
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
 
         // second call should be cached (no additional wiremock hits)
-        githubController.retrieveGithubUser("some-user");
+        githubController.retrieveGithubUser("some-user", null).join();
         wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user")));
-        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos")));
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
     }
 
     @Test
@@ -222,14 +257,14 @@ public class GithubApplicationIntegrationTest {
                         .withHeader("Content-Type", "application/json")
                         .withBody("{\"login\":\"some-user\"}")));
 
-        stubFor(get(urlEqualTo("/users/some-user/repos"))
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
                 .willReturn(aResponse()
                         .withFixedDelay(600)
                         .withHeader("Content-Type", "application/json")
                         .withBody("[{\"name\":\"repo\",\"url\":\"example.com\"}]")));
 
         long start = System.nanoTime();
-        GithubUserWithReposResponse result = githubController.retrieveGithubUser("some-user");
+        GithubUserWithReposResponse result = githubController.retrieveGithubUser("some-user", null).join().getBody();
         long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
 
         assertEquals("some-user", result.login());
@@ -238,13 +273,13 @@ public class GithubApplicationIntegrationTest {
         assertTrue(elapsedMs < 1100, "Expected parallel-ish behavior; elapsedMs=" + elapsedMs);
 
         wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user")));
-        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos")));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
     }
 
     @Test
     void shouldThrowErrorMessageDueToInvalidUsername() {
         Set<?> violations = assertThrows(ConstraintViolationException.class, () ->
-                githubController.retrieveGithubUser("--bad-user")
+                githubController.retrieveGithubUser("--bad-user", null)
         ).getConstraintViolations();
 
         violations.forEach(v ->
@@ -256,7 +291,7 @@ public class GithubApplicationIntegrationTest {
     void shouldThrowErrorMessageDueToUsernameBeingTooLong() {
         String tooLong = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
         Set<?> violations = assertThrows(ConstraintViolationException.class, () ->
-                githubController.retrieveGithubUser(tooLong)
+                githubController.retrieveGithubUser(tooLong, null)
         ).getConstraintViolations();
 
         violations.forEach(v ->
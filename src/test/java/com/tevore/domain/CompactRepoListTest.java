@@ -0,0 +1,72 @@
+package com.tevore.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactRepoListTest {
+
+    private static final String PREFIX = "https://api.github.com/repos/some-user/";
+
+    @Test
+    void shouldReadBackTheSameReposInOrder() {
+        List<GithubRepo> repos = List.of(
+                new GithubRepo("repo", PREFIX + "repo"),
+                new GithubRepo("dotfiles", PREFIX + "dotfiles"),
+                new GithubRepo("ünïcode-repo", PREFIX + "ünïcode-repo"));
+
+        List<GithubRepo> compact = CompactRepoList.of(repos);
+
+        assertInstanceOf(CompactRepoList.class, compact);
+        assertEquals(repos, compact);
+        assertEquals(repos.hashCode(), compact.hashCode());
+        assertEquals(new GithubRepo("dotfiles", PREFIX + "dotfiles"), compact.get(1));
+    }
+
+    @Test
+    void shouldKeepUrlsThatDoNotFollowThePrefix() {
+        List<GithubRepo> repos = List.of(
+                new GithubRepo("repo", PREFIX + "repo"),
+                new GithubRepo("forked", "https://api.github.com/repos/other-user/forked"),
+                new GithubRepo("local", "example.com"));
+
+        assertEquals(repos, CompactRepoList.of(repos));
+        assertEquals(List.of(new GithubRepo("repo", "example.com")),
+                CompactRepoList.of(List.of(new GithubRepo("repo", "example.com"))));
+    }
+
+    @Test
+    void shouldLeaveListsItCannotEncodeAsTheyAre() {
+        List<GithubRepo> unnamed = new ArrayList<>();
+        unnamed.add(new GithubRepo(null, PREFIX));
+
+        assertSame(unnamed, CompactRepoList.of(unnamed));
+        assertTrue(CompactRepoList.of(List.of()).isEmpty());
+
+        List<GithubRepo> compact = CompactRepoList.of(List.of(new GithubRepo("repo", PREFIX + "repo")));
+        assertSame(compact, CompactRepoList.of(compact));
+    }
+
+    @Test
+    void shouldBeReadOnly() {
+        List<GithubRepo> compact = CompactRepoList.of(List.of(new GithubRepo("repo", PREFIX + "repo")));
+
+        assertThrows(UnsupportedOperationException.class, () -> compact.add(new GithubRepo("other", PREFIX + "other")));
+    }
+
+    @Test
+    void shouldRetainAFractionOfTheRecordForm() {
+        List<GithubRepo> repos = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            repos.add(new GithubRepo("repo-" + i, PREFIX + "repo-" + i));
+        }
+
+        CompactRepoList compact = (CompactRepoList) CompactRepoList.of(repos);
+
+        // Names of 6 - 8 bytes and a 4 byte offset each, the prefix once
+        assertTrue(compact.retainedBytes() < 1000 * 16, "retained " + compact.retainedBytes());
+    }
+}
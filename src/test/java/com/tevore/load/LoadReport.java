@@ -0,0 +1,120 @@
+package com.tevore.load;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * What one load run measured
+ * --
+ * Latency is taken from when the request was due to be sent ( open loop ) or was sent
+ * ( closed loop ) to when the response was read, so a stalled server shows up as latency
+ * instead of as fewer requests ( coordinated omission ).
+ * cacheHitRatio is worked out from the stub: every miss of /user/{username} costs exactly one
+ * call to the users endpoint, refreshes included, so hits = requests - user calls.
+ */
+record LoadReport(String load,
+                  long requests,
+                  long errors,
+                  double throughput,
+                  double p50Ms,
+                  double p99Ms,
+                  double p999Ms,
+                  double maxMs,
+                  double cacheHitRatio,
+                  double upstreamCallsPerRequest) {
+
+    static LoadReport of(String load, long[] latencyNanos, long errors, Duration elapsed,
+                         long upstreamUserCalls, long upstreamCalls) {
+        long[] sorted = latencyNanos.clone();
+        Arrays.sort(sorted);
+        long requests = sorted.length;
+        return new LoadReport(load, requests, errors,
+                requests / (elapsed.toNanos() / 1_000_000_000.0),
+                percentileMs(sorted, 0.50), percentileMs(sorted, 0.99), percentileMs(sorted, 0.999),
+                percentileMs(sorted, 1.0),
+                requests == 0 ? 0 : Math.max(0, 1 - (double) upstreamUserCalls / requests),
+                requests == 0 ? 0 : (double) upstreamCalls / requests);
+    }
+
+    static String header() {
+        return String.format("%-7s %9s %7s %9s %9s %9s %9s %9s %9s %9s",
+                "load", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "hit ratio", "up/req");
+    }
+
+    String row() {
+        return String.format("%-7s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.3f %9.3f",
+                load, requests, errors, throughput, p50Ms, p99Ms, p999Ms, maxMs, cacheHitRatio, upstreamCallsPerRequest);
+    }
+
+    double errorRatio() {
+        return requests == 0 ? 0 : (double) errors / requests;
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("requests", requests);
+        map.put("errors", errors);
+        map.put("throughput", throughput);
+        map.put("p50Ms", p50Ms);
+        map.put("p99Ms", p99Ms);
+        map.put("p999Ms", p999Ms);
+        map.put("maxMs", maxMs);
+        map.put("cacheHitRatio", cacheHitRatio);
+        map.put("upstreamCallsPerRequest", upstreamCallsPerRequest);
+        return map;
+    }
+
+    /**
+     * Everything that got worse than the baseline by more than threshold ( 0.25 = 25% ).
+     * Latency and upstream calls may not go up, throughput and hit ratio may not go down,
+     * and the error ratio may not grow by more than threshold percentage points.
+     * Metrics missing from the baseline are not checked.
+     */
+    List<String> regressionsAgainst(Map<String, Object> baseline, double threshold) {
+        List<String> regressions = new ArrayList<>();
+        higherIsWorse(regressions, baseline, "p50Ms", threshold, LoadReport::p50Ms);
+        higherIsWorse(regressions, baseline, "p99Ms", threshold, LoadReport::p99Ms);
+        higherIsWorse(regressions, baseline, "p999Ms", threshold, LoadReport::p999Ms);
+        higherIsWorse(regressions, baseline, "upstreamCallsPerRequest", threshold, LoadReport::upstreamCallsPerRequest);
+        lowerIsWorse(regressions, baseline, "throughput", threshold, LoadReport::throughput);
+        lowerIsWorse(regressions, baseline, "cacheHitRatio", threshold, LoadReport::cacheHitRatio);
+
+        if (baseline.get("errors") instanceof Number errors && baseline.get("requests") instanceof Number requests
+                && requests.longValue() > 0) {
+            double baselineRatio = errors.doubleValue() / requests.doubleValue();
+            if (errorRatio() > baselineRatio + threshold / 100) {
+                regressions.add(String.format("%s error ratio %.4f > baseline %.4f", load, errorRatio(), baselineRatio));
+            }
+        }
+        return regressions;
+    }
+
+    private void higherIsWorse(List<String> regressions, Map<String, Object> baseline, String metric,
+                               double threshold, ToDoubleFunction<LoadReport> current) {
+        if (!(baseline.get(metric) instanceof Number expected)) return;
+        double actual = current.applyAsDouble(this);
+        if (actual > expected.doubleValue() * (1 + threshold)) {
+            regressions.add(String.format("%s %s %.3f > baseline %.3f", load, metric, actual, expected.doubleValue()));
+        }
+    }
+
+    private void lowerIsWorse(List<String> regressions, Map<String, Object> baseline, String metric,
+                              double threshold, ToDoubleFunction<LoadReport> current) {
+        if (!(baseline.get(metric) instanceof Number expected)) return;
+        double actual = current.applyAsDouble(this);
+        if (actual < expected.doubleValue() * (1 - threshold)) {
+            regressions.add(String.format("%s %s %.3f < baseline %.3f", load, metric, actual, expected.doubleValue()));
+        }
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.clamp(index, 0, sorted.length - 1)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,224 @@
+package com.tevore.load;
+
+import com.tevore.stub.GithubStubServer;
+import com.tevore.stub.Latency;
+import com.tevore.stub.StubOptions;
+import com.tevore.stub.StubStats;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives GET /user/{username} of the whole app ( production cache configuration ) against the
+ * github-stub with Zipf distributed usernames, and fails when the results regress past the
+ * recorded baseline. Run with ./gradlew loadTest, results are printed to stdout and written
+ * to build/results/load/results.json. Until a baseline has been recorded the run only reports.
+ * --
+ * Two shapes of load, one after the other once the caches are warm:
+ *  closed - load.callers callers, each sending its next request when the last one is answered
+ *  open   - load.rate requests per second whatever the latency, like independent clients
+ * --
+ * Settings ( -P on the gradle command line ):
+ *  load.warmup=10s  load.duration=30s  load.callers=64  load.rate=500
+ *  load.usernames=10000  load.zipf-exponent=1.1  load.upstream-latency=lognormal:40ms,250ms
+ *  load.threshold=0.25  how much worse than the baseline a metric may get
+ *  load.update-baseline=true  writes this run as the new baseline instead of checking it
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class UserEndpointLoadTest {
+
+    private static final Duration WARMUP = duration("load.warmup", "10s");
+    private static final Duration DURATION = duration("load.duration", "30s");
+    private static final int CALLERS = Integer.getInteger("load.callers", 64);
+    private static final int RATE = Integer.getInteger("load.rate", 500);
+    private static final double THRESHOLD = Double.parseDouble(System.getProperty("load.threshold", "0.25"));
+
+    private static final ZipfUsernames USERNAMES = new ZipfUsernames(
+            Integer.getInteger("load.usernames", 10_000),
+            Double.parseDouble(System.getProperty("load.zipf-exponent", "1.1")));
+
+    private static final GithubStubServer STUB = startStub();
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final JsonMapper jsonMapper = new JsonMapper();
+
+    @Value("${local.server.port}")
+    int port;
+
+    @DynamicPropertySource
+    static void upstream(DynamicPropertyRegistry registry) {
+        registry.add("github.users.url", STUB::usersUrl);
+        registry.add("github.repos.url", STUB::reposUrl);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    void userEndpointUnderLoad() {
+        closedLoop("warmup", WARMUP);
+
+        List<LoadReport> reports = List.of(closedLoop("closed", DURATION), openLoop("open", DURATION));
+
+        System.out.printf("%d usernames, %d callers, %d req/s open loop, %ss per run%n",
+                Integer.getInteger("load.usernames", 10_000), CALLERS, RATE, DURATION.toSeconds());
+        System.out.println(LoadReport.header());
+        reports.forEach(report -> System.out.println(report.row()));
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        reports.forEach(report -> results.put(report.load(), report.toMap()));
+        write(new File(System.getProperty("load.results.file", "build/results/load/results.json")), results);
+
+        File baselineFile = new File(System.getProperty("load.baseline.file", "src/test/resources/load/baseline.json"));
+        if (Boolean.getBoolean("load.update-baseline")) {
+            write(baselineFile, results);
+            System.out.println("Baseline updated: " + baselineFile);
+            return;
+        }
+        // Ceilings only mean something once they come from a real run on the machine that checks them
+        if (!baselineFile.isFile()) {
+            System.out.println("No baseline at " + baselineFile + ", nothing checked. "
+                    + "Record one from a run with -Pload.update-baseline=true");
+            return;
+        }
+
+        Map<String, Object> baseline = read(baselineFile);
+        List<String> regressions = new ArrayList<>();
+        for (LoadReport report : reports) {
+            if (baseline.get(report.load()) instanceof Map<?, ?> expected) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> metrics = (Map<String, Object>) expected;
+                regressions.addAll(report.regressionsAgainst(metrics, THRESHOLD));
+            }
+        }
+        regressions.forEach(regression -> System.out.println("REGRESSION " + regression));
+        assertTrue(regressions.isEmpty(), "Regressed past the baseline by more than " + THRESHOLD + ": " + regressions);
+    }
+
+    private LoadReport closedLoop(String load, Duration duration) {
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        LongAdder errors = new LongAdder();
+        StubStats.Snapshot before = STUB.stats().snapshot();
+
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < CALLERS; c++) {
+                callers.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        long sent = System.nanoTime();
+                        if (!call(USERNAMES.next(ThreadLocalRandom.current()))) errors.increment();
+                        latencies.add(System.nanoTime() - sent);
+                    }
+                });
+            }
+        }
+        return report(load, latencies, errors, start, before);
+    }
+
+    private LoadReport openLoop(String load, Duration duration) {
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        LongAdder errors = new LongAdder();
+        StubStats.Snapshot before = STUB.stats().snapshot();
+
+        long interval = 1_000_000_000L / RATE;
+        long requests = duration.toNanos() / interval;
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < requests; i++) {
+                long due = start + i * interval;
+                LockSupport.parkNanos(due - System.nanoTime());
+                String username = USERNAMES.next(ThreadLocalRandom.current());
+                clients.submit(() -> {
+                    if (!call(username)) errors.increment();
+                    latencies.add(System.nanoTime() - due);
+                });
+            }
+        }
+        return report(load, latencies, errors, start, before);
+    }
+
+    private boolean call(String username) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/user/" + username))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        try {
+            return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException ex) {
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static LoadReport report(String load, ConcurrentLinkedQueue<Long> latencies, LongAdder errors,
+                                     long startNanos, StubStats.Snapshot before) {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        StubStats.Snapshot upstream = STUB.stats().snapshot().minus(before);
+        long[] nanos = latencies.stream().mapToLong(Long::longValue).toArray();
+        return LoadReport.of(load, nanos, errors.sum(), elapsed, upstream.users(), upstream.total());
+    }
+
+    private Map<String, Object> read(File file) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = jsonMapper.readValue(file, Map.class);
+        return map;
+    }
+
+    private void write(File file, Map<String, Object> results) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Could not create " + dir));
+        }
+        jsonMapper.writerWithDefaultPrettyPrinter().writeValue(file, results);
+    }
+
+    private static GithubStubServer startStub() {
+        try {
+            return GithubStubServer.start(StubOptions.defaults()
+                    .withMissingRatio(0)
+                    .withRateLimit(0, Duration.ofHours(1))
+                    .withLatency(Latency.parse(System.getProperty("load.upstream-latency", "lognormal:40ms,250ms"))));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static Duration duration(String property, String fallback) {
+        return StubOptions.parseDuration(System.getProperty(property, fallback));
+    }
+}
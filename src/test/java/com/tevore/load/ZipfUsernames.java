@@ -0,0 +1,31 @@
+package com.tevore.load;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Draws user-0 .. user-(n-1) with Zipf probabilities: user-k is picked in proportion to
+ * 1 / (k + 1)^exponent, so a few usernames are very hot and most are rarely asked for,
+ * which is what decides how well a cache of a given size does
+ */
+final class ZipfUsernames {
+
+    private final double[] cumulative;
+
+    ZipfUsernames(int usernames, double exponent) {
+        cumulative = new double[usernames];
+        double sum = 0;
+        for (int k = 0; k < usernames; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < usernames; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    String next(RandomGenerator random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return "user-" + (index >= 0 ? index : Math.min(-index - 1, cumulative.length - 1));
+    }
+}
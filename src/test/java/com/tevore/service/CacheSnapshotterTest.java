@@ -0,0 +1,210 @@
+package com.tevore.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.tevore.domain.CompactRepoList;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import com.tevore.utils.TestUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheSnapshotterTest {
+
+    private static final Instant RECEIVED_AT = Instant.parse("2026-10-17T09:30:00Z");
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldRestoreCachesWithTheLifetimeTheyHadLeftAndTheirValidators() throws Exception {
+        GithubUser user = TestUtils.generateGitHubUser();
+        List<GithubRepo> repos = CompactRepoList.of(List.of(
+                new GithubRepo("repo", "https://api.github.com/repos/some-user/repo"),
+                new GithubRepo("dotfiles", "https://api.github.com/repos/some-user/dotfiles")));
+
+        CacheManager before = cacheManager();
+        RevalidationStore storeBefore = new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(16), 0.25, 0.8);
+        before.getCache("githubUsers").put("some-user", user);
+        before.getCache("githubUserRepos").put("some-user", repos);
+        caffeine(before, "githubUsers").policy().expireVariably().orElseThrow()
+                .put("short-lived-user", user, 100, TimeUnit.MILLISECONDS);
+        storeBefore.storeUser("some-user", new ValidatedResponse<>(user, "\"user-etag\"", null, RECEIVED_AT));
+        storeBefore.storeRepos("some-user", new RepoPages(List.of(
+                new ValidatedResponse<>(repos, "\"page-1\"", "Sat, 17 Oct 2026 09:30:00 GMT", RECEIVED_AT),
+                new ValidatedResponse<>(List.of(), null, null, RECEIVED_AT))));
+
+        snapshotter(before, storeBefore).write();
+        Thread.sleep(200);
+
+        CacheManager after = cacheManager();
+        RevalidationStore storeAfter = new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(16), 0.25, 0.8);
+        int restored = snapshotter(after, storeAfter).restore();
+
+        assertEquals(4, restored);
+        assertEquals(user, after.getCache("githubUsers").get("some-user", GithubUser.class));
+        assertEquals(repos, after.getCache("githubUserRepos").get("some-user", List.class));
+        // Expired while the app was down
+        assertNull(after.getCache("githubUsers").get("short-lived-user"));
+
+        Duration left = caffeine(after, "githubUsers").policy().expireVariably().orElseThrow()
+                .getExpiresAfter("some-user").orElseThrow();
+        assertTrue(left.compareTo(Duration.ofMinutes(5)) < 0 && left.compareTo(Duration.ofMinutes(4)) > 0, left.toString());
+
+        assertEquals(storeBefore.user("some-user"), storeAfter.user("some-user"));
+        assertEquals(storeBefore.repos("some-user"), storeAfter.repos("some-user"));
+        assertEquals(1, registry.get("cache.snapshot.restore").timer().count());
+    }
+
+    @Test
+    void shouldLeaveOutStoredResponsesWhoseBodiesDoNotEncode() throws Exception {
+        GithubUser user = TestUtils.generateGitHubUser();
+        // Past writeUTF's 64KB, which CacheEntryCodec gives up on
+        String huge = "x".repeat(70_000);
+        GithubUser hugeUser = new GithubUser("huge-user", null, null, huge, null, null, RECEIVED_AT);
+        List<GithubRepo> repos = List.of(new GithubRepo("repo", "https://api.github.com/repos/some-user/repo"));
+        List<GithubRepo> hugeRepos = List.of(new GithubRepo(huge, "https://example.com/" + huge));
+
+        RevalidationStore storeBefore = new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(16), 0.25, 0.8);
+        storeBefore.storeUser("some-user", new ValidatedResponse<>(user, "\"user-etag\"", null, RECEIVED_AT));
+        storeBefore.storeUser("huge-user", new ValidatedResponse<>(hugeUser, "\"huge-etag\"", null, RECEIVED_AT));
+        storeBefore.storeRepos("some-user", new RepoPages(List.of(
+                new ValidatedResponse<>(repos, "\"page-1\"", null, RECEIVED_AT))));
+        storeBefore.storeRepos("huge-user", new RepoPages(List.of(
+                new ValidatedResponse<>(repos, "\"page-1\"", null, RECEIVED_AT),
+                new ValidatedResponse<>(hugeRepos, "\"page-2\"", null, RECEIVED_AT))));
+
+        snapshotter(cacheManager(), storeBefore).write();
+
+        RevalidationStore storeAfter = new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(16), 0.25, 0.8);
+        assertEquals(2, snapshotter(cacheManager(), storeAfter).restore());
+
+        assertEquals(storeBefore.user("some-user"), storeAfter.user("some-user"));
+        assertEquals(storeBefore.repos("some-user"), storeAfter.repos("some-user"));
+        assertNull(storeAfter.user("huge-user"));
+        assertNull(storeAfter.repos("huge-user"));
+    }
+
+    @Test
+    void shouldSkipSnapshotWrittenBeforeKeysWereLowerCase() throws Exception {
+        CacheManager before = cacheManager();
+        before.getCache("githubUsers").put("some-user", TestUtils.generateGitHubUser());
+        snapshotter(before, new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(16), 0.25, 0.8)).write();
+
+        // Rewrite the version right after the magic number to 1
+        Path file = directory.resolve("cache.snapshot");
+        byte[] written = Files.readAllBytes(file);
+        ByteBuffer.wrap(written).putInt(4, 1);
+        Files.write(file, written);
+
+        CacheManager after = cacheManager();
+        assertEquals(0, snapshotter(after, new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(16), 0.25, 0.8)).restore());
+        assertNull(after.getCache("githubUsers").get("some-user"));
+    }
+
+    @Test
+    void shouldWriteOnStopAndRestoreOnStart() {
+        GithubUser user = TestUtils.generateGitHubUser();
+        CacheManager before = cacheManager();
+        CacheSnapshotter first = snapshotter(before, new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(16), 0.25, 0.8));
+        first.start();
+        before.getCache("githubUsers").put("some-user", user);
+        first.stop();
+
+        CacheManager after = cacheManager();
+        CacheSnapshotter second = snapshotter(after, new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(16), 0.25, 0.8));
+        second.start();
+        second.stop();
+
+        assertEquals(user, after.getCache("githubUsers").get("some-user", GithubUser.class));
+        assertFalse(Files.exists(directory.resolve("cache.snapshot.tmp")));
+    }
+
+    @Test
+    void shouldStartColdWithoutAUsableSnapshot() throws IOException {
+        CacheManager caches = cacheManager();
+        RevalidationStore store = new RevalidationStore(Duration.ofHours(1), DataSize.ofMegabytes(16), 0.25, 0.8);
+        CacheSnapshotter snapshotter = snapshotter(caches, store);
+
+        assertEquals(0, snapshotter.restore());
+
+        Files.writeString(directory.resolve("cache.snapshot"), "not a snapshot");
+        assertEquals(0, snapshotter.restore());
+
+        // Cut off halfway through the first cache
+        caches.getCache("githubUsers").put("some-user", TestUtils.generateGitHubUser());
+        caches.getCache("githubUsers").put("other-user", TestUtils.generateGitHubUser());
+        snapshotter.write();
+        byte[] written = Files.readAllBytes(directory.resolve("cache.snapshot"));
+        Files.write(directory.resolve("cache.snapshot"), Arrays.copyOf(written, written.length / 2));
+
+        assertDoesNotThrow(() -> snapshotter(cacheManager(), store).restore());
+
+        CacheSnapshotter disabled = new CacheSnapshotter(caches, store, "", Duration.ofMinutes(5), meters());
+        disabled.start();
+        assertEquals(0, disabled.restore());
+        disabled.stop();
+    }
+
+    private CacheSnapshotter snapshotter(CacheManager caches, RevalidationStore store) {
+        return new CacheSnapshotter(caches, store, directory.resolve("cache.snapshot").toString(),
+                Duration.ofMinutes(5), meters());
+    }
+
+    private ObjectProvider<MeterRegistry> meters() {
+        return new StaticListableBeanFactory(Map.of("registry", registry)).getBeanProvider(MeterRegistry.class);
+    }
+
+    // Variable expiry like CachingConfig's, five minutes from every write
+    private static CacheManager cacheManager() {
+        CaffeineCacheManager manager = new CaffeineCacheManager();
+        for (String name : List.of("githubUsers", "githubUserRepos")) {
+            manager.registerCustomCache(name, Caffeine.newBuilder()
+                    .expireAfter(new Expiry<Object, Object>() {
+                        @Override
+                        public long expireAfterCreate(Object key, Object value, long currentTime) {
+                            return Duration.ofMinutes(5).toNanos();
+                        }
+
+                        @Override
+                        public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+                            return Duration.ofMinutes(5).toNanos();
+                        }
+
+                        @Override
+                        public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+                            return currentDuration;
+                        }
+                    })
+                    .build());
+        }
+        return manager;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static com.github.benmanes.caffeine.cache.Cache<Object, Object> caffeine(CacheManager manager, String name) {
+        return (com.github.benmanes.caffeine.cache.Cache<Object, Object>) manager.getCache(name).getNativeCache();
+    }
+}
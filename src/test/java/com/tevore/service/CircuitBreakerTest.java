@@ -0,0 +1,89 @@
+package com.tevore.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(50).toNanos();
+    private static final long SLOW = Duration.ofSeconds(3).toNanos();
+
+    private final CircuitBreaker breaker = new CircuitBreaker(new CircuitBreaker.Settings(
+            10, 4, 50, Duration.ofSeconds(2), 80, Duration.ofSeconds(30), 2));
+
+    @Test
+    void shouldStayClosedUntilMinimumCallsAreRecorded() {
+        call(true, FAST, 0);
+        call(true, FAST, 0);
+        call(true, FAST, 0);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.tryAcquire(0));
+    }
+
+    @Test
+    void shouldOpenOnFailureRateAndRefuseUntilOpenDurationPasses() {
+        call(false, FAST, 0);
+        call(true, FAST, 0);
+        call(false, FAST, 0);
+        assertEquals(CircuitBreaker.State.OPEN, call(true, FAST, 0));
+
+        assertEquals(30_000, breaker.tryAcquire(0));
+        assertEquals(1_000, breaker.tryAcquire(29_000));
+    }
+
+    @Test
+    void shouldOpenOnSlowCallRateEvenWithoutErrors() {
+        call(false, SLOW, 0);
+        call(false, SLOW, 0);
+        call(false, SLOW, 0);
+        assertEquals(CircuitBreaker.State.OPEN, call(false, SLOW, 0));
+    }
+
+    @Test
+    void shouldCloseAfterSuccessfulProbesInHalfOpen() {
+        open();
+
+        assertEquals(0, breaker.tryAcquire(30_000));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertEquals(0, breaker.tryAcquire(30_000));
+        // Only two probes at a time
+        assertTrue(breaker.tryAcquire(30_000) > 0);
+
+        assertNull(breaker.onResult(false, FAST, 30_000));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.onResult(false, FAST, 30_000));
+        assertEquals(0, breaker.tryAcquire(30_000));
+    }
+
+    @Test
+    void shouldReopenWhenAProbeFails() {
+        open();
+
+        assertEquals(0, breaker.tryAcquire(30_000));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.onResult(true, FAST, 30_000));
+        assertEquals(30_000, breaker.tryAcquire(30_000));
+    }
+
+    @Test
+    void shouldJudgeOnlyTheLastWindowOfCalls() {
+        call(true, FAST, 0);
+        for (int i = 0; i < 10; i++) call(false, FAST, 0);
+        for (int i = 0; i < 4; i++) assertNull(call(true, FAST, 0));
+
+        // 5 of the last 10 failed, though only 5 of all 15 did
+        assertEquals(CircuitBreaker.State.OPEN, call(true, FAST, 0));
+    }
+
+    private CircuitBreaker.State call(boolean failure, long durationNanos, long nowMillis) {
+        assertEquals(0, breaker.tryAcquire(nowMillis));
+        return breaker.onResult(failure, durationNanos, nowMillis);
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) call(true, FAST, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+}
@@ -3,32 +3,47 @@ package com.tevore.service;
 import com.tevore.configuration.RestClientConfig;
 import com.tevore.domain.GithubRepo;
 import com.tevore.domain.GithubUser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.restclient.test.autoconfigure.RestClientTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.cache.CacheManager;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestClient;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.*;
 
-@RestClientTest(components = GithubClient.class,
+@RestClientTest(components = {GithubClient.class, RevalidationStore.class, GithubRateLimiter.class, NegativeCache.class,
+        GithubClientMetrics.class, UpstreamGuards.class, AsyncRetrier.class,
+        GithubCacheInspector.class},
         excludeFilters = @ComponentScan.Filter(
                 type = FilterType.ASSIGNABLE_TYPE,
                 classes = RestClientConfig.class
@@ -36,7 +51,9 @@ import static org.springframework.test.web.client.response.MockRestResponseCreat
 )
 @TestPropertySource(properties = {
         "github.users.url=http://api.test/users/{username}",
-        "github.repos.url=http://api.test/users/{username}/repos"
+        "github.repos.url=http://api.test/users/{username}/repos",
+        "github.retry.initial-delay=10ms",
+        "github.retry.max-delay=50ms"
 })
 @Import(GithubClientTest.TestSliceConfig.class)
 class GithubClientTest {
@@ -45,12 +62,34 @@ class GithubClientTest {
     static class TestSliceConfig {
         @Bean
         CacheManager cacheManager() {
-            return new ConcurrentMapCacheManager("githubUsers", "githubUserRepos");
+            CaffeineCacheManager manager = new CaffeineCacheManager();
+            manager.setAsyncCacheMode(true);
+            manager.setCacheNames(List.of("githubUsers", "githubUserRepos"));
+            return manager;
         }
 
         @Bean
-        RestClient restClient(RestClient.Builder builder) {
-            return builder.build();
+        RestClient restClient(RestClient.Builder builder, GithubRateLimiter rateLimiter, JsonMapper jsonMapper) {
+            return builder
+                    .requestInterceptor(rateLimiter.interceptor())
+                    .messageConverters(converters -> converters.add(0, new GithubRepoPageConverter(jsonMapper)))
+                    .build();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        // Pages are fetched in order on the calling thread so expectations stay ordered
+        @Bean
+        Executor repoPageExecutor() {
+            return new SyncTaskExecutor();
+        }
+
+        @Bean
+        Executor asyncExecutor() {
+            return new SyncTaskExecutor();
         }
     }
 
@@ -62,11 +101,26 @@ class GithubClientTest {
 
     @Autowired CacheManager cacheManager;
 
+    @Autowired RevalidationStore revalidationStore;
+
+    @Autowired GithubRateLimiter rateLimiter;
+
+    @Autowired NegativeCache negativeCache;
+
+    @Autowired MeterRegistry meterRegistry;
+
+    @Autowired UpstreamGuards guards;
+
     @BeforeEach
     void reset() {
         server.reset();
         cacheManager.getCache("githubUsers").clear();
         cacheManager.getCache("githubUserRepos").clear();
+        revalidationStore.clear();
+        rateLimiter.clear();
+        negativeCache.clear();
+        meterRegistry.clear();
+        guards.reset();
     }
 
     @Test
@@ -84,7 +138,7 @@ class GithubClientTest {
 
     @Test
     void shouldSuccessfullyFetchRepos() {
-        server.expect(requestTo("http://api.test/users/some-user/repos"))
+        server.expect(requestTo("http://api.test/users/some-user/repos?per_page=100"))
                 .andExpect(method(HttpMethod.GET))
                 .andRespond(withSuccess("[{\"name\":\"repo\",\"url\":\"example.com\"}]", MediaType.APPLICATION_JSON));
 
@@ -96,6 +150,28 @@ class GithubClientTest {
         server.verify();
     }
 
+    @Test
+    void shouldReadOnlyNameAndUrlFromFullRepoObjects() {
+        String page = """
+                [{"id":1,"name":"repo","full_name":"some-user/repo","private":false,
+                  "owner":{"login":"some-user","id":1,"url":"https://api.github.com/users/some-user"},
+                  "url":"https://api.github.com/repos/some-user/repo","topics":["a","b"],
+                  "license":{"key":"mit","name":"MIT License","url":"https://api.github.com/licenses/mit"},
+                  "permissions":{"admin":false,"push":false,"pull":true},"description":null},
+                 {"name":"empty","url":null,"owner":null}]
+                """;
+        server.expect(requestTo("http://api.test/users/some-user/repos?per_page=100"))
+                .andRespond(withSuccess(page, MediaType.APPLICATION_JSON));
+
+        List<GithubRepo> repos = githubClient.fetchRepos("some-user");
+
+        assertEquals(List.of(
+                new GithubRepo("repo", "https://api.github.com/repos/some-user/repo"),
+                new GithubRepo("empty", null)
+        ), repos);
+        server.verify();
+    }
+
     @Test
     void shouldThrowHttpClientErrorExceptionFromFetchUser() {
         server.expect(requestTo("http://api.test/users/missing"))
@@ -107,6 +183,18 @@ class GithubClientTest {
         server.verify();
     }
 
+    @Test
+    void shouldRememberMissingUsernameIgnoringCase() {
+        server.expect(requestTo("http://api.test/users/missing/repos?per_page=100"))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+
+        assertFalse(negativeCache.isMissing("Missing"));
+        assertThrows(HttpClientErrorException.NotFound.class, () -> githubClient.fetchRepos("missing"));
+        assertTrue(negativeCache.isMissing("Missing"));
+
+        server.verify();
+    }
+
     @Test
     void shouldThrowGithubUpstreamExceptionAfterExhaustedRetryFrom429Error() {
         server.expect(ExpectedCount.times(4), requestTo("http://api.test/users/some-user"))
@@ -122,6 +210,19 @@ class GithubClientTest {
     }
 
 
+    @Test
+    void shouldShareCacheEntriesAcrossSpellingsOfAUsername() {
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/Some-User"))
+                .andRespond(withSuccess("{\"login\":\"some-user\"}", MediaType.APPLICATION_JSON));
+
+        assertEquals("some-user", githubClient.fetchUser("Some-User").login());
+        assertEquals("some-user", githubClient.fetchUser("some-user").login());
+        assertEquals("some-user", githubClient.fetchUserAsync("SOME-USER").join().login());
+        assertNotNull(revalidationStore.user("some-user"));
+
+        server.verify();
+    }
+
     @Test
     void shouldSuccessfullyFallbackToCacheAfterServerHit() {
         server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
@@ -136,4 +237,316 @@ class GithubClientTest {
 
         server.verify();
     }
+
+    @Test
+    void shouldRevalidateExpiredUserWithEtagAndReuseBodyOn304() {
+        HttpHeaders etagHeaders = new HttpHeaders();
+        etagHeaders.setETag("\"user-v1\"");
+
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withSuccess("{\"login\":\"some-user\"}", MediaType.APPLICATION_JSON)
+                        .headers(etagHeaders));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"user-v1\""))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        GithubUser first = githubClient.fetchUser("some-user");
+
+        // Simulate the cache entry expiring
+        cacheManager.getCache("githubUsers").clear();
+
+        GithubUser second = githubClient.fetchUser("some-user");
+        assertSame(first, second);
+        assertEquals(second, cacheManager.getCache("githubUsers").get("some-user", GithubUser.class));
+
+        server.verify();
+    }
+
+    @Test
+    void shouldRevalidateExpiredReposWithLastModifiedAndReuseBodyOn304() {
+        HttpHeaders lastModifiedHeaders = new HttpHeaders();
+        lastModifiedHeaders.set(HttpHeaders.LAST_MODIFIED, "Tue, 04 Mar 2014 12:24:54 GMT");
+
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user/repos?per_page=100"))
+                .andRespond(withSuccess("[{\"name\":\"repo\",\"url\":\"example.com\"}]", MediaType.APPLICATION_JSON)
+                        .headers(lastModifiedHeaders));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user/repos?per_page=100"))
+                .andExpect(header(HttpHeaders.IF_MODIFIED_SINCE, "Tue, 04 Mar 2014 12:24:54 GMT"))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        List<GithubRepo> first = githubClient.fetchRepos("some-user");
+
+        cacheManager.getCache("githubUserRepos").clear();
+
+        List<GithubRepo> second = githubClient.fetchRepos("some-user");
+        assertEquals(first, second);
+        assertEquals(1, second.size());
+
+        server.verify();
+    }
+
+    @Test
+    void shouldServeStaleUserWhenUpstreamFailsAfterExpiry() {
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withSuccess("{\"login\":\"some-user\"}", MediaType.APPLICATION_JSON));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withServerError());
+
+        GithubUser first = githubClient.fetchUser("some-user");
+
+        cacheManager.getCache("githubUsers").clear();
+
+        GithubUser stale = githubClient.fetchUser("some-user");
+        assertEquals(first, stale);
+
+        server.verify();
+    }
+
+    @Test
+    void shouldFetchEveryPageOfReposAndMergeInOrder() {
+        HttpHeaders linkHeaders = new HttpHeaders();
+        linkHeaders.set(HttpHeaders.LINK,
+                "<http://api.test/user/1/repos?per_page=100&page=2>; rel=\"next\", "
+                        + "<http://api.test/user/1/repos?per_page=100&page=3>; rel=\"last\"");
+
+        server.expect(requestTo("http://api.test/users/some-user/repos?per_page=100"))
+                .andRespond(withSuccess("[{\"name\":\"repo-1\",\"url\":\"example.com\"}]", MediaType.APPLICATION_JSON)
+                        .headers(linkHeaders));
+        server.expect(requestTo("http://api.test/users/some-user/repos?per_page=100&page=2"))
+                .andRespond(withSuccess("[{\"name\":\"repo-2\",\"url\":\"example.com\"}]", MediaType.APPLICATION_JSON));
+        server.expect(requestTo("http://api.test/users/some-user/repos?per_page=100&page=3"))
+                .andRespond(withSuccess("[{\"name\":\"repo-3\",\"url\":\"example.com\"}]", MediaType.APPLICATION_JSON));
+
+        List<GithubRepo> repos = githubClient.fetchRepos("some-user");
+        assertEquals(List.of("repo-1", "repo-2", "repo-3"), repos.stream().map(GithubRepo::name).toList());
+
+        server.verify();
+    }
+
+    @Test
+    void shouldStreamPagesInOrderAndCacheTheMergedList() {
+        HttpHeaders linkHeaders = new HttpHeaders();
+        linkHeaders.set(HttpHeaders.LINK,
+                "<http://api.test/user/1/repos?per_page=100&page=2>; rel=\"next\", "
+                        + "<http://api.test/user/1/repos?per_page=100&page=3>; rel=\"last\"");
+
+        server.expect(requestTo("http://api.test/users/some-user/repos?per_page=100"))
+                .andRespond(withSuccess("[{\"name\":\"repo-1\",\"url\":\"example.com\"}]", MediaType.APPLICATION_JSON)
+                        .headers(linkHeaders));
+        server.expect(requestTo("http://api.test/users/some-user/repos?per_page=100&page=2"))
+                .andRespond(withSuccess("[{\"name\":\"repo-2\",\"url\":\"example.com\"}]", MediaType.APPLICATION_JSON));
+        server.expect(requestTo("http://api.test/users/some-user/repos?per_page=100&page=3"))
+                .andRespond(withSuccess("[{\"name\":\"repo-3\",\"url\":\"example.com\"}]", MediaType.APPLICATION_JSON));
+
+        List<List<String>> streamed = new ArrayList<>();
+        List<GithubRepo> repos = githubClient.streamRepos("some-user",
+                page -> streamed.add(page.stream().map(GithubRepo::name).toList()));
+
+        assertEquals(List.of(List.of("repo-1"), List.of("repo-2"), List.of("repo-3")), streamed);
+        assertEquals(repos, cacheManager.getCache("githubUserRepos").get("some-user").get());
+
+        server.verify();
+    }
+
+    @Test
+    void shouldReadLastPageFromLinkHeader() {
+        assertEquals(OptionalInt.of(7), GithubClient.lastPage(
+                "<https://api.github.com/user/1/repos?per_page=100&page=2>; rel=\"next\", "
+                        + "<https://api.github.com/user/1/repos?per_page=100&page=7>; rel=\"last\""));
+        assertEquals(OptionalInt.empty(), GithubClient.lastPage(
+                "<https://api.github.com/user/1/repos?per_page=100&page=6>; rel=\"prev\", "
+                        + "<https://api.github.com/user/1/repos?per_page=100&page=1>; rel=\"first\""));
+        assertEquals(OptionalInt.empty(), GithubClient.lastPage(null));
+    }
+
+    @Test
+    void shouldWaitForRetryAfterBeforeRetrying429() {
+        HttpHeaders retryAfter = new HttpHeaders();
+        retryAfter.set(HttpHeaders.RETRY_AFTER, "1");
+
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS).headers(retryAfter));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withSuccess("{\"login\":\"some-user\"}", MediaType.APPLICATION_JSON));
+
+        long start = System.currentTimeMillis();
+        GithubUser user = githubClient.fetchUser("some-user");
+
+        assertEquals("some-user", user.login());
+        assertTrue(System.currentTimeMillis() - start >= 900, "retry should wait for Retry-After");
+        server.verify();
+    }
+
+    @Test
+    void shouldScheduleCallForResetInsteadOfWaitingWhenBudgetIsSpent() {
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withSuccess("{\"login\":\"some-user\"}", MediaType.APPLICATION_JSON)
+                        .headers(rateLimitHeaders(0, 1)));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/other-user"))
+                .andRespond(withSuccess("{\"login\":\"other-user\"}", MediaType.APPLICATION_JSON));
+
+        githubClient.fetchUser("some-user");
+
+        // The asyncExecutor runs on the calling thread, so a wait for the reset would happen right here
+        CompletableFuture<GithubUser> deferred = githubClient.fetchUserAsync("other-user");
+        assertFalse(deferred.isDone());
+
+        assertEquals("other-user", deferred.join().login());
+        server.verify();
+    }
+
+    @Test
+    void shouldFailFastWithoutCallingGithubWhenBudgetIsSpent() {
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withSuccess("{\"login\":\"some-user\"}", MediaType.APPLICATION_JSON)
+                        .headers(rateLimitHeaders(0, 3600)));
+
+        githubClient.fetchUser("some-user");
+        assertEquals(0, rateLimiter.remaining(GithubRateLimiter.CORE));
+
+        // No expectation for other-user: the call must never reach Github
+        GithubRateLimitedException ex = assertThrows(GithubRateLimitedException.class,
+                () -> githubClient.fetchUser("other-user"));
+        assertTrue(ex.getRetryAfter().toMinutes() >= 59);
+
+        server.verify();
+    }
+
+    @Test
+    void shouldKeepReservedBudgetForCallersOverBackgroundRefresh() {
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withSuccess("{\"login\":\"some-user\"}", MediaType.APPLICATION_JSON)
+                        .headers(rateLimitHeaders(5, 3600)));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/other-user"))
+                .andRespond(withSuccess("{\"login\":\"other-user\"}", MediaType.APPLICATION_JSON)
+                        .headers(rateLimitHeaders(4, 3600)));
+
+        githubClient.fetchUser("some-user");
+
+        // 5 left is inside the background reserve, so the refresh is turned away...
+        assertThrows(GithubRateLimitedException.class, () -> githubClient.refreshUser("some-user"));
+
+        // ...while a caller still gets through
+        assertEquals("other-user", githubClient.fetchUser("other-user").login());
+
+        server.verify();
+    }
+
+    @Test
+    void shouldTimeGithubCallsAndCountRetriesByOutcome() {
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withSuccess("{\"login\":\"some-user\"}", MediaType.APPLICATION_JSON));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/missing-user"))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+
+        githubClient.fetchUser("some-user");
+        assertThrows(HttpClientErrorException.NotFound.class, () -> githubClient.fetchUser("missing-user"));
+
+        assertEquals(1, upstreamCalls("rate_limited"));
+        assertEquals(1, upstreamCalls("success"));
+        assertEquals(1, upstreamCalls("not_found"));
+        assertEquals(1, meterRegistry.get("github.retry.attempts")
+                .tags("call", "fetchUser", "exception", "TooManyRequests").counter().count());
+        assertEquals(1, meterRegistry.get("github.retry.calls")
+                .tags("call", "fetchUser", "outcome", "success", "retried", "true").counter().count());
+        assertEquals(1, meterRegistry.get("github.retry.calls")
+                .tags("call", "fetchUser", "outcome", "failure", "retried", "false").counter().count());
+
+        server.verify();
+    }
+
+    @Test
+    void shouldOpenCircuitAfterRepeatedServerErrorsAndFailFast() {
+        for (int i = 0; i < 10; i++) {
+            server.expect(ExpectedCount.once(), requestTo("http://api.test/users/user-" + i))
+                    .andRespond(withStatus(HttpStatus.BAD_GATEWAY));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            String username = "user-" + i;
+            assertThrows(HttpServerErrorException.class, () -> githubClient.fetchUser(username));
+        }
+
+        // No expectation left: the next call must not reach Github
+        assertThrows(GithubUnavailableException.class, () -> githubClient.fetchUser("user-10"));
+        assertEquals(CircuitBreaker.State.OPEN, guards.state(GithubClientMetrics.USER));
+        assertEquals(CircuitBreaker.State.CLOSED, guards.state(GithubClientMetrics.REPOS));
+
+        server.verify();
+    }
+
+    @Test
+    void shouldScheduleAsyncRetryInsteadOfBlockingTheCaller() throws Exception {
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withSuccess("{\"login\":\"some-user\"}", MediaType.APPLICATION_JSON));
+
+        // The first attempt ran on this thread, the retry is left to the timer
+        CompletableFuture<GithubUser> user = githubClient.fetchUserAsync("some-user");
+        assertFalse(user.isDone());
+
+        assertEquals("some-user", user.get(5, TimeUnit.SECONDS).login());
+        assertEquals("some-user", cacheManager.getCache("githubUsers").get("some-user", GithubUser.class).login());
+        assertEquals(1, meterRegistry.get("github.retry.calls")
+                .tags("call", "fetchUser", "outcome", "success", "retried", "true").counter().count());
+
+        server.verify();
+    }
+
+    @Test
+    void shouldRecoverAsyncFetchOnceAttemptsAreExhausted() {
+        server.expect(ExpectedCount.times(4), requestTo("http://api.test/users/some-user/repos?per_page=100"))
+                .andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/missing"))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+
+        ExecutionException exhausted = assertThrows(ExecutionException.class,
+                () -> githubClient.fetchReposAsync("some-user").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(GithubClient.GithubUpstreamException.class, exhausted.getCause());
+
+        ExecutionException missing = assertThrows(ExecutionException.class,
+                () -> githubClient.fetchUserAsync("missing").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(HttpClientErrorException.NotFound.class, missing.getCause());
+        assertTrue(negativeCache.isMissing("missing"));
+
+        server.verify();
+    }
+
+    @Test
+    void shouldShareAnInFlightLoadBetweenCallersWithoutHoldingAThread() throws Exception {
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS));
+        server.expect(ExpectedCount.once(), requestTo("http://api.test/users/some-user"))
+                .andRespond(withSuccess("{\"login\":\"some-user\"}", MediaType.APPLICATION_JSON));
+
+        // The first load is waiting out its backoff, the others join it instead of calling Github
+        CompletableFuture<GithubUser> first = githubClient.fetchUserAsync("some-user");
+        CompletableFuture<GithubUser> second = githubClient.fetchUserAsync("Some-User");
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        assertEquals("some-user", first.get(5, TimeUnit.SECONDS).login());
+        assertEquals("some-user", second.get(5, TimeUnit.SECONDS).login());
+
+        server.verify();
+    }
+
+    private long upstreamCalls(String outcome) {
+        return meterRegistry.get("github.client.requests")
+                .tags("call", "user", "priority", "foreground", "outcome", outcome)
+                .timer()
+                .count();
+    }
+
+    private static HttpHeaders rateLimitHeaders(int remaining, long resetInSeconds) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-RateLimit-Limit", "5000");
+        headers.set("X-RateLimit-Remaining", String.valueOf(remaining));
+        headers.set("X-RateLimit-Reset", String.valueOf(System.currentTimeMillis() / 1000 + resetInSeconds));
+        headers.set("X-RateLimit-Resource", "core");
+        return headers;
+    }
 }
@@ -0,0 +1,47 @@
+package com.tevore.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GithubRateLimiterTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void shouldRefillOncePastTheResetAndStillRunOutAtTheReserve() {
+        GithubRateLimiter.Budget budget = new GithubRateLimiter.Budget();
+        budget.update(5, 0, NOW - 1, 0);
+
+        // The window has reset, so the full budget is assumed, down to the reserve of 2
+        assertEquals(0, budget.tryAdmit(2, NOW));
+        assertEquals(0, budget.tryAdmit(2, NOW + 1));
+        assertEquals(0, budget.tryAdmit(2, NOW + 2));
+        assertTrue(budget.tryAdmit(2, NOW + 3) > 0);
+        assertTrue(budget.tryAdmit(2, NOW + 4) > 0);
+        assertEquals(2, budget.remaining());
+    }
+
+    @Test
+    void shouldNotRefillWithoutAResetFromGithub() {
+        GithubRateLimiter.Budget budget = new GithubRateLimiter.Budget();
+        budget.update(5, 3, 0, 0);
+
+        assertEquals(0, budget.tryAdmit(2, NOW));
+        assertTrue(budget.tryAdmit(2, NOW + 1) > 0);
+        assertEquals(2, budget.remaining());
+    }
+
+    @Test
+    void shouldRefillAgainForTheNextWindowGithubReports() {
+        GithubRateLimiter.Budget budget = new GithubRateLimiter.Budget();
+        budget.update(3, 0, NOW - 1, 0);
+        assertEquals(0, budget.tryAdmit(2, NOW));
+        assertTrue(budget.tryAdmit(2, NOW) > 0);
+
+        // Github reports the next window, which resets in turn
+        budget.update(3, 2, NOW + 1000, 0);
+        assertEquals(1000, budget.tryAdmit(2, NOW));
+        assertEquals(0, budget.tryAdmit(2, NOW + 1000));
+    }
+}
@@ -9,10 +9,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.HttpClientErrorException;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -24,11 +32,28 @@ class GithubServiceOrchestrationTest {
     @Mock
     GithubServiceAsyncClient asyncClient;
 
+    @Mock
+    RevalidationStore revalidationStore;
+
+    @Mock
+    GithubCacheInspector cacheInspector;
+
+    @Mock
+    ObjectProvider<GithubGraphqlClient> graphqlClient;
+
+    @Mock
+    NegativeCache negativeCache;
+
+    @Mock
+    GithubClient githubClient;
+
     GithubService githubService;
 
     @BeforeEach
     void setUp() {
-        githubService = new GithubService(asyncClient);
+        githubService = new GithubService(asyncClient, revalidationStore, cacheInspector, graphqlClient, negativeCache,
+                new SerializedResponseCache(Duration.ofMinutes(5), Duration.ofMinutes(10), DataSize.ofMegabytes(64), 0.1, new JsonMapper()),
+                githubClient);
     }
 
     @Test
@@ -147,6 +172,102 @@ class GithubServiceOrchestrationTest {
         verifyNoMoreInteractions(asyncClient);
     }
 
+    @Test
+    void shouldAnswerCachedBatchUsernamesWithoutGoingUpstream() {
+        when(cacheInspector.cachedUser("cached-user"))
+                .thenReturn(Optional.of(TestUtils.generateGitHubUser()));
+        when(cacheInspector.cachedRepos("cached-user"))
+                .thenReturn(Optional.of(List.of(new GithubRepo("repo", "example.com"))));
+        when(cacheInspector.cachedUser("missing-user")).thenReturn(Optional.empty());
+        when(cacheInspector.cachedRepos("missing-user")).thenReturn(Optional.empty());
+
+        when(asyncClient.fetchUserAsync("missing-user"))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("user failed")));
+        when(asyncClient.fetchReposAsync("missing-user"))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        Map<String, CompletableFuture<GithubUserWithReposResponse>> results =
+                githubService.retrieveGithubUsersAndRepoInfo(List.of("cached-user", "missing-user"));
+
+        assertEquals(List.of("cached-user", "missing-user"), List.copyOf(results.keySet()));
+        assertEquals(1, results.get("cached-user").join().repos().size());
+        assertTrue(results.get("missing-user").isCompletedExceptionally());
+
+        verify(asyncClient).fetchUserAsync("missing-user");
+        verify(asyncClient).fetchReposAsync("missing-user");
+        verifyNoMoreInteractions(asyncClient);
+    }
+
+    @Test
+    void shouldStartBatchMissesAsEarlierOnesFinishAndSkipTimedOutOnes() {
+        when(cacheInspector.cachedUser(anyString())).thenReturn(Optional.empty());
+        when(cacheInspector.cachedRepos(anyString())).thenReturn(Optional.empty());
 
-}
+        CompletableFuture<GithubUser> firstUser = new CompletableFuture<>();
+        when(asyncClient.fetchUserAsync("first-user")).thenReturn(firstUser);
+        when(asyncClient.fetchReposAsync("first-user")).thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        // github.batch.concurrency is not set here, so one lookup at a time
+        Map<String, CompletableFuture<GithubUserWithReposResponse>> results =
+                githubService.retrieveGithubUsersAndRepoInfo(List.of("first-user", "second-user"));
+
+        verify(asyncClient, never()).fetchUserAsync("second-user");
 
+        // The caller's deadline passes before second-user got a slot, so it never goes upstream
+        results.get("second-user").completeExceptionally(new TimeoutException());
+        firstUser.complete(TestUtils.generateGitHubUser());
+
+        assertEquals("some-user", results.get("first-user").join().login());
+        verify(asyncClient, never()).fetchUserAsync("second-user");
+        verify(asyncClient, never()).fetchReposAsync("second-user");
+    }
+
+    @Test
+    void shouldCancelUpstreamCallsWhenTheCallerTimesOut() {
+        CompletableFuture<GithubUser> userFetch = new CompletableFuture<>();
+        CompletableFuture<List<GithubRepo>> reposFetch = new CompletableFuture<>();
+        when(asyncClient.fetchUserAsync("some-user")).thenReturn(userFetch);
+        when(asyncClient.fetchReposAsync("some-user")).thenReturn(reposFetch);
+
+        CompletableFuture<GithubUserWithReposResponse> lookup =
+                githubService.retrieveGithubUserAndRepoInfoAsync("some-user");
+        assertFalse(lookup.isDone());
+
+        lookup.completeExceptionally(new TimeoutException());
+
+        assertTrue(userFetch.isCancelled());
+        assertTrue(reposFetch.isCancelled());
+    }
+
+    @Test
+    void shouldAnswerKnownMissingUsernameWithoutCallingGithub() {
+        when(negativeCache.isMissing("ghost")).thenReturn(true);
+
+        HttpClientErrorException thrown = assertThrows(HttpClientErrorException.NotFound.class,
+                () -> githubService.retrieveGithubUserAndRepoInfo("ghost"));
+
+        assertEquals(404, thrown.getStatusCode().value());
+        verifyNoInteractions(asyncClient);
+    }
+
+    @Test
+    void shouldReuseAssembledResponseWhileCachedEntriesAreUnchanged() {
+        GithubUser user = TestUtils.generateGitHubUser();
+        List<GithubRepo> repos = List.of(new GithubRepo("repo", "example.com"));
+        List<GithubRepo> refreshedRepos = List.of(new GithubRepo("repo", "example.com"));
+
+        when(cacheInspector.cachedUser("some-user")).thenReturn(Optional.of(user));
+        when(cacheInspector.cachedRepos("some-user"))
+                .thenReturn(Optional.of(repos), Optional.of(repos), Optional.of(refreshedRepos));
+
+        GithubUserWithReposResponse first = githubService.retrieveGithubUserAndRepoInfo("some-user");
+        GithubUserWithReposResponse second = githubService.retrieveGithubUserAndRepoInfo("some-user");
+        GithubUserWithReposResponse afterRefresh = githubService.retrieveGithubUserAndRepoInfo("some-user");
+
+        assertSame(first, second);
+        assertSame(repos, first.repos());
+        assertNotSame(second, afterRefresh);
+        assertEquals(second, afterRefresh);
+        verifyNoInteractions(asyncClient);
+    }
+}
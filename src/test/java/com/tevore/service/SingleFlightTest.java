@@ -0,0 +1,111 @@
+package com.tevore.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final AsyncCache<String, String> cache = Caffeine.newBuilder().executor(Runnable::run).buildAsync();
+
+    private final SingleFlight<String> flights = new SingleFlight<>(cache);
+
+    @Test
+    void shouldShareOneLoadBetweenConcurrentCallers() {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flights.load("some-user", () -> {
+            loads.incrementAndGet();
+            return upstream;
+        });
+        CompletableFuture<String> second = flights.load("some-user", () -> {
+            loads.incrementAndGet();
+            return upstream;
+        });
+
+        upstream.complete("loaded");
+
+        assertEquals(1, loads.get());
+        assertEquals("loaded", first.join());
+        assertEquals("loaded", second.join());
+    }
+
+    @Test
+    void shouldAnswerFromTheCacheOnceLoadedAndLoadAgainOnceInvalidated() {
+        AtomicInteger loads = new AtomicInteger();
+
+        flights.load("some-user", () -> CompletableFuture.completedFuture("v" + loads.incrementAndGet())).join();
+        String cached = flights.load("some-user", () -> CompletableFuture.completedFuture("v" + loads.incrementAndGet())).join();
+
+        assertEquals("v1", cached);
+        assertEquals("v1", cache.synchronous().getIfPresent("some-user"));
+
+        cache.synchronous().invalidate("some-user");
+        String reloaded = flights.load("some-user", () -> CompletableFuture.completedFuture("v" + loads.incrementAndGet())).join();
+        assertEquals("v2", reloaded);
+    }
+
+    @Test
+    void shouldNotCacheAFailedLoad() {
+        CompletableFuture<String> failed = flights.load("some-user",
+                () -> CompletableFuture.failedFuture(new IllegalStateException("upstream down")));
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertNull(cache.getIfPresent("some-user"));
+        assertEquals("loaded", flights.load("some-user", () -> CompletableFuture.completedFuture("loaded")).join());
+    }
+
+    @Test
+    void shouldKeepTheLoadInTheCacheWhileItIsInFlight() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        flights.load("some-user", () -> upstream);
+
+        CompletableFuture<String> entry = cache.getIfPresent("some-user");
+        assertNotNull(entry);
+        assertFalse(entry.isDone());
+
+        upstream.complete("loaded");
+        assertEquals("loaded", entry.join());
+    }
+
+    @Test
+    void shouldKeepLoadingWhileAnyCallerIsStillWaiting() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> impatient = flights.load("some-user", () -> upstream);
+        CompletableFuture<String> patient = flights.load("some-user", () -> upstream);
+
+        impatient.cancel(false);
+        assertFalse(upstream.isCancelled());
+
+        upstream.complete("loaded");
+        assertEquals("loaded", patient.join());
+    }
+
+    @Test
+    void shouldCancelLoadOnceEveryCallerGaveUp() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flights.load("some-user", () -> upstream);
+        CompletableFuture<String> second = flights.load("some-user", () -> upstream);
+
+        first.cancel(false);
+        second.completeExceptionally(new TimeoutException());
+
+        assertTrue(upstream.isCancelled());
+
+        // A later caller is not handed the cancelled load
+        CompletableFuture<String> retried = new CompletableFuture<>();
+        CompletableFuture<String> third = flights.load("some-user", () -> retried);
+        retried.complete("loaded");
+        assertEquals("loaded", third.join());
+    }
+}
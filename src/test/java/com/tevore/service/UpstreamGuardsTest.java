@@ -0,0 +1,79 @@
+package com.tevore.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamGuardsTest {
+
+    // One user call in flight at a time, the circuit opens after 2 failures out of 2
+    private final UpstreamGuards guards = new UpstreamGuards(1, 1, 1, Duration.ofMillis(10),
+            2, 2, 50, Duration.ofSeconds(2), 80, Duration.ofSeconds(30), 1,
+            new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+    private final AtomicInteger admitted = new AtomicInteger();
+
+    @Test
+    void shouldNotTakeAdmissionForACallTheBulkheadRefuses() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> inFlight = CompletableFuture.supplyAsync(() ->
+                guards.call(GithubClientMetrics.USER, admitted::incrementAndGet, () -> {
+                    started.countDown();
+                    await(release);
+                    return "first";
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertThrows(GithubUnavailableException.class,
+                () -> guards.call(GithubClientMetrics.USER, admitted::incrementAndGet, () -> "second"));
+        assertEquals(1, admitted.get());
+
+        release.countDown();
+        assertEquals("first", inFlight.get(5, TimeUnit.SECONDS));
+        // The slot is free again
+        assertEquals("third", guards.call(GithubClientMetrics.USER, admitted::incrementAndGet, () -> "third"));
+        assertEquals(2, admitted.get());
+    }
+
+    @Test
+    void shouldNotTakeAdmissionForACallTheOpenCircuitRefuses() {
+        for (int i = 0; i < 2; i++) {
+            assertThrows(ResourceAccessException.class, () -> guards.call(GithubClientMetrics.USER,
+                    admitted::incrementAndGet, () -> {
+                        throw new ResourceAccessException("down");
+                    }));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, guards.state(GithubClientMetrics.USER));
+
+        assertThrows(GithubUnavailableException.class,
+                () -> guards.call(GithubClientMetrics.USER, admitted::incrementAndGet, () -> "refused"));
+        assertEquals(2, admitted.get());
+    }
+
+    @Test
+    void shouldFreeTheSlotWhenAdmissionRefusesTheCall() {
+        assertThrows(GithubRateLimitedException.class, () -> guards.call(GithubClientMetrics.USER, () -> {
+            throw new GithubRateLimitedException("Budget spent", Duration.ofSeconds(1));
+        }, () -> "refused"));
+
+        assertEquals("admitted", guards.call(GithubClientMetrics.USER, admitted::incrementAndGet, () -> "admitted"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.tevore.service.integration;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.tevore.configuration.TestCacheConfig;
+import com.tevore.domain.GithubRepo;
+import com.tevore.domain.GithubUser;
+import com.tevore.domain.GithubUserWithReposResponse;
+import com.tevore.service.GithubService;
+import com.tevore.service.NegativeCache;
+import com.tevore.service.RevalidationStore;
+import com.tevore.service.UpstreamGuards;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.wiremock.spring.ConfigureWireMock;
+import org.wiremock.spring.EnableWireMock;
+import org.wiremock.spring.InjectWireMock;
+
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "github.client.mode=graphql",
+        "github.graphql.url=${wiremock.server.baseUrl}/graphql",
+        "github.graphql.token=test-token"
+})
+@EnableWireMock(@ConfigureWireMock(port = 0))
+@Import(TestCacheConfig.class)
+class GithubGraphqlIntegrationTest {
+
+    private static final String USER_WITH_REPOS = """
+            {"data":{"user":{
+              "login":"some-user",
+              "avatarUrl":"https://avatars.githubusercontent.com/u/1",
+              "name":"Some User",
+              "location":"Miami",
+              "email":"",
+              "createdAt":"2014-03-04T12:24:54Z",
+              "repositories":{
+                "pageInfo":{"hasNextPage":false,"endCursor":"Y3Vyc29yOjI="},
+                "nodes":[
+                  {"name":"repo-1","nameWithOwner":"some-user/repo-1"},
+                  {"name":"repo-2","nameWithOwner":"some-user/repo-2"}
+                ]
+              }
+            }}}
+            """;
+
+    @Autowired
+    GithubService githubService;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @Autowired
+    RevalidationStore revalidationStore;
+
+    @Autowired
+    NegativeCache negativeCache;
+
+    @Autowired
+    UpstreamGuards guards;
+
+    @InjectWireMock
+    WireMockServer wireMockServer;
+
+    @BeforeEach
+    void setup() {
+        wireMockServer.resetAll();
+        cacheManager.getCache("githubUsers").clear();
+        cacheManager.getCache("githubUserRepos").clear();
+        revalidationStore.clear();
+        negativeCache.clear();
+        guards.reset();
+    }
+
+    @Test
+    void shouldFetchUserAndReposInOneGraphqlCallAndCacheBoth() {
+        stubFor(post(urlEqualTo("/graphql"))
+                .withHeader("Authorization", equalTo("Bearer test-token"))
+                .withRequestBody(matchingJsonPath("$.variables.login", equalTo("some-user")))
+                .willReturn(okJson(USER_WITH_REPOS)));
+
+        GithubUserWithReposResponse first = githubService.retrieveGithubUserAndRepoInfo("some-user");
+        GithubUserWithReposResponse second = githubService.retrieveGithubUserAndRepoInfo("some-user");
+
+        assertEquals("some-user", first.login());
+        assertEquals(wireMockServer.baseUrl() + "/users/some-user", first.url());
+        assertNull(first.email());
+        assertEquals("Tue, 4 Mar 2014 12:24:54 GMT", first.createdAt());
+        assertEquals(List.of(
+                new GithubRepo("repo-1", "https://api.github.com/repos/some-user/repo-1"),
+                new GithubRepo("repo-2", "https://api.github.com/repos/some-user/repo-2")
+        ), second.repos());
+
+        assertNotNull(cacheManager.getCache("githubUsers").get("some-user", GithubUser.class));
+        assertNotNull(cacheManager.getCache("githubUserRepos").get("some-user"));
+
+        // One POST in total, and the REST endpoints are never used
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/graphql")));
+        wireMockServer.verify(0, getRequestedFor(anyUrl()));
+    }
+
+    @Test
+    void shouldReportMissingUserAsNotFound() {
+        stubFor(post(urlEqualTo("/graphql"))
+                .willReturn(okJson("""
+                        {"data":{"user":null},
+                         "errors":[{"type":"NOT_FOUND","message":"Could not resolve to a User"}]}
+                        """)));
+
+        assertThrows(HttpClientErrorException.NotFound.class,
+                () -> githubService.retrieveGithubUserAndRepoInfo("nonexistent-user"));
+
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/graphql")));
+    }
+
+    @Test
+    void shouldNotRememberUserAsMissingWhenGithubFails() {
+        stubFor(post(urlEqualTo("/graphql"))
+                .willReturn(okJson("""
+                        {"data":{"user":null},
+                         "errors":[{"type":"SERVICE_UNAVAILABLE","message":"Something went wrong"}]}
+                        """)));
+
+        assertThrows(HttpServerErrorException.class,
+                () -> githubService.retrieveGithubUserAndRepoInfo("some-user"));
+
+        assertFalse(negativeCache.isMissing("some-user"));
+        wireMockServer.verify(4, postRequestedFor(urlEqualTo("/graphql")));
+    }
+
+    @Test
+    void shouldServeLastKnownUserAndReposWhenGithubKeepsFailing() {
+        stubFor(post(urlEqualTo("/graphql")).inScenario("outage")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(okJson(USER_WITH_REPOS))
+                .willSetStateTo("failing"));
+        stubFor(post(urlEqualTo("/graphql")).inScenario("outage")
+                .whenScenarioStateIs("failing")
+                .willReturn(serverError()));
+
+        githubService.retrieveGithubUserAndRepoInfo("some-user");
+        cacheManager.getCache("githubUsers").clear();
+        cacheManager.getCache("githubUserRepos").clear();
+
+        GithubUserWithReposResponse stale = githubService.retrieveGithubUserAndRepoInfo("some-user");
+
+        assertEquals("some-user", stale.login());
+        assertEquals(2, stale.repos().size());
+        // The first call, then every attempt at the failing one
+        wireMockServer.verify(5, postRequestedFor(urlEqualTo("/graphql")));
+    }
+
+    @Test
+    void shouldOnlyAskForPublicRepos() {
+        stubFor(post(urlEqualTo("/graphql"))
+                .withRequestBody(containing("privacy: PUBLIC"))
+                .willReturn(okJson(USER_WITH_REPOS)));
+
+        assertEquals(2, githubService.retrieveGithubUserAndRepoInfo("some-user").repos().size());
+    }
+}
@@ -6,6 +6,9 @@ import com.tevore.domain.GithubRepo;
 import com.tevore.domain.GithubUser;
 import com.tevore.domain.GithubUserWithReposResponse;
 import com.tevore.service.GithubService;
+import com.tevore.service.NegativeCache;
+import com.tevore.service.RevalidationStore;
+import com.tevore.service.UpstreamGuards;
 import com.tevore.utils.TestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -38,6 +41,15 @@ class GithubServiceIntegrationTest {
     @Autowired
     CacheManager cacheManager;
 
+    @Autowired
+    RevalidationStore revalidationStore;
+
+    @Autowired
+    NegativeCache negativeCache;
+
+    @Autowired
+    UpstreamGuards guards;
+
     @InjectWireMock
     WireMockServer wireMockServer;
 
@@ -52,6 +64,9 @@ class GithubServiceIntegrationTest {
 
         users.clear();
         repos.clear();
+        revalidationStore.clear();
+        negativeCache.clear();
+        guards.reset();
     }
 
     @Test
@@ -59,7 +74,7 @@ class GithubServiceIntegrationTest {
         stubFor(get(urlEqualTo("/users/some-user"))
                 .willReturn(okJson("{\"login\":\"some-user\"}")));
 
-        stubFor(get(urlEqualTo("/users/some-user/repos"))
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
                 .willReturn(okJson("[{\"name\":\"repo\",\"url\":\"example.com\"}]")));
 
         GithubUserWithReposResponse first = githubService.retrieveGithubUserAndRepoInfo("some-user");
@@ -83,7 +98,7 @@ class GithubServiceIntegrationTest {
 
         // Verify only one upstream hit per endpoint (second call should be cached)
         wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user")));
-        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos")));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
     }
 
     @Test
@@ -99,13 +114,13 @@ class GithubServiceIntegrationTest {
                 .whenScenarioStateIs("ok")
                 .willReturn(okJson("{\"login\":\"some-user\"}")));
 
-        stubFor(get(urlEqualTo("/users/some-user/repos"))
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
                 .inScenario("retry-repos")
                 .whenScenarioStateIs(STARTED)
                 .willReturn(aResponse().withStatus(429))
                 .willSetStateTo("ok"));
 
-        stubFor(get(urlEqualTo("/users/some-user/repos"))
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
                 .inScenario("retry-repos")
                 .whenScenarioStateIs("ok")
                 .willReturn(okJson("[{\"name\":\"repo\",\"url\":\"example.com\"}]")));
@@ -117,12 +132,12 @@ class GithubServiceIntegrationTest {
 
         // Verify retries happened (>= 2 calls to each endpoint)
         wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user")));
-        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos")));
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
 
         // Verify caching now prevents additional upstream calls
         githubService.retrieveGithubUserAndRepoInfo("some-user");
         wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user")));
-        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos")));
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
     }
 
     @Test
@@ -135,7 +150,7 @@ class GithubServiceIntegrationTest {
                         .withHeader("Content-Type", "application/json")
                         .withBody("{\"login\":\"some-user\"}")));
 
-        stubFor(get(urlEqualTo("/users/some-user/repos"))
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
                 .willReturn(aResponse()
                         .withFixedDelay(600)
                         .withHeader("Content-Type", "application/json")
@@ -153,7 +168,7 @@ class GithubServiceIntegrationTest {
         assertTrue(elapsedMs < 1100, "Expected parallel execution; elapsedMs=" + elapsedMs);
 
         wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user")));
-        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos")));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
     }
 
     @Test
@@ -161,7 +176,7 @@ class GithubServiceIntegrationTest {
         stubFor(get(urlEqualTo("/users/some-user"))
                 .willReturn(okJson("{\"login\":\"some-user\"}")));
 
-        stubFor(get(urlEqualTo("/users/some-user/repos"))
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
                 .willReturn(okJson("[{\"name\":\"repo\",\"url\":\"example.com\"}]")));
 
         githubService.retrieveGithubUserAndRepoInfo("some-user");
@@ -176,7 +191,60 @@ class GithubServiceIntegrationTest {
         githubService.retrieveGithubUserAndRepoInfo("some-user");
 
         wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user")));
-        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos")));
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
     }
-}
 
+    @Test
+    void shouldFetchAllRepoPagesAndCacheThemAsOneList() {
+        stubFor(get(urlEqualTo("/users/some-user"))
+                .willReturn(okJson("{\"login\":\"some-user\"}")));
+
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
+                .willReturn(okJson(TestUtils.repoPageJson(1, 100))
+                        .withHeader("Link", TestUtils.linkHeader(wireMockServer.baseUrl(), 2, 3))));
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100&page=2"))
+                .willReturn(okJson(TestUtils.repoPageJson(101, 100))
+                        .withFixedDelay(300)));
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100&page=3"))
+                .willReturn(okJson(TestUtils.repoPageJson(201, 42))));
+
+        GithubUserWithReposResponse res = githubService.retrieveGithubUserAndRepoInfo("some-user");
+
+        // Page 2 is slower than page 3, order must still follow the pages
+        assertEquals(242, res.repos().size());
+        for (int i = 0; i < res.repos().size(); i++) {
+            assertEquals("repo-" + (i + 1), res.repos().get(i).name());
+        }
+
+        List<GithubRepo> cachedRepos = (List<GithubRepo>) cacheManager.getCache("githubUserRepos").get("some-user").get();
+        assertEquals(242, cachedRepos.size());
+
+        githubService.retrieveGithubUserAndRepoInfo("some-user");
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100")));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100&page=2")));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/users/some-user/repos?per_page=100&page=3")));
+    }
+
+    @Test
+    void shouldFetchRemainingRepoPagesInParallel() {
+        stubFor(get(urlEqualTo("/users/some-user"))
+                .willReturn(okJson("{\"login\":\"some-user\"}")));
+
+        stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100"))
+                .willReturn(okJson(TestUtils.repoPageJson(1, 100))
+                        .withHeader("Link", TestUtils.linkHeader(wireMockServer.baseUrl(), 2, 4))));
+        for (int page = 2; page <= 4; page++) {
+            stubFor(get(urlEqualTo("/users/some-user/repos?per_page=100&page=" + page))
+                    .willReturn(okJson(TestUtils.repoPageJson((page - 1) * 100 + 1, 100))
+                            .withFixedDelay(500)));
+        }
+
+        long start = System.nanoTime();
+        GithubUserWithReposResponse res = githubService.retrieveGithubUserAndRepoInfo("some-user");
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertEquals(400, res.repos().size());
+        // Serially the three delayed pages would take 1500ms+
+        assertTrue(elapsedMs < 1200, "Expected parallel page fetching; elapsedMs=" + elapsedMs);
+    }
+}
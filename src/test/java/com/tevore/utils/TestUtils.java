@@ -42,6 +42,23 @@ public class TestUtils {
         );
     }
 
+    //Helper method to build a page of repos named repo-{first} onwards
+    public static String repoPageJson(int first, int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"name\":\"repo-").append(first + i)
+                    .append("\",\"url\":\"example.com\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    //Helper method to build the Link header Github sends on the first page
+    public static String linkHeader(String baseUrl, int next, int last) {
+        return "<" + baseUrl + "/users/some-user/repos?per_page=100&page=" + next + ">; rel=\"next\", "
+                + "<" + baseUrl + "/users/some-user/repos?per_page=100&page=" + last + ">; rel=\"last\"";
+    }
+
     //Helper method to assist with cache eviction
     public static void awaitUntilNull(Cache cache, String key, Duration timeout) {
         long deadline = System.nanoTime() + timeout.toNanos();